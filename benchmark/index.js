@@ -35,8 +35,25 @@ app.get('/data', function(req, res){
                     .map(d => d.data.filter(t => t.fileName === 'students.tbl')[0].readBlocks),
                 name: stat.type + '(readBlocks)',
             });
+            var traceH = Object.assign({}, baseTrace, {
+                x: data.map(d => d.statName),
+                y: data.reduce((prev, current) => {
+                    current.data.forEach(s => prev.push(s));
+                    return prev;
+                }, [])
+                    .filter(d => d.type === stat.type)
+                    .map(d => {
+                        const file = d.data.filter(t => t.fileName === 'students.tbl')[0];
+                        return file.bufferStats ? file.bufferStats.hitRatio : null;
+                    }),
+                name: stat.type + '(hitRatio)',
+                type: 'scatter',
+                mode: 'lines+markers',
+                yaxis: 'y2',
+            });
             result.push(traceW);
             result.push(traceR);
+            result.push(traceH);
         });
         res.send(result);
     });
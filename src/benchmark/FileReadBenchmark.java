@@ -0,0 +1,91 @@
+package benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import simpledb.file.Block;
+import simpledb.file.FileMgr;
+import simpledb.file.Page;
+import simpledb.server.SimpleDB;
+
+import java.io.PrintWriter;
+import java.util.Random;
+
+/**
+ * Misura il throughput delle letture di blocchi dal file manager
+ * al variare del numero di thread che leggono in parallelo.
+ * Ogni thread legge blocchi casuali di un proprio file, senza passare dal buffer pool,
+ * quindi il throughput dipende solo dalla concorrenza del file manager.
+ * Ogni misura viene ripetuta leggendo i file con I/O ordinario e tramite memory mapping.
+ */
+public class FileReadBenchmark {
+
+    private static final String DB_NAME = "fileReadBenchDB";
+    private static final int BLOCKS = 4 * FileMgr.EXTENT_BLOCKS;
+    private static final int READS = 100000;
+
+    public static void main(String args[]) throws Exception {
+        deleteDatabase(DB_NAME);
+        SimpleDB.initFileMgr(DB_NAME);
+        int[] threadCounts = { 1, 2, 4, 8 };
+        for (int t = 0; t < threadCounts[threadCounts.length - 1]; t++) {
+            Page page = new Page();
+            for (int i = 0; i < BLOCKS; i++)
+                page.append(fileName(t));
+        }
+
+        JSONArray allStats = new JSONArray();
+        measure(1, false);  // riscaldamento della JVM
+        for (boolean mapped : new boolean[] { false, true })
+            for (int threads : threadCounts)
+                allStats.put(measure(threads, mapped));
+        deleteDatabase(DB_NAME);
+
+        PrintWriter writer = new PrintWriter("benchmark/fileread.json", "UTF-8");
+        writer.println(allStats);
+        writer.close();
+    }
+
+    private static JSONObject measure(int threads, boolean mapped) throws Exception {
+        for (int t = 0; t < threads; t++)
+            SimpleDB.fileMgr().setMapped(fileName(t), mapped);
+        Thread[] readers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final String fileName = fileName(t);
+            final Random random = new Random(t);
+            readers[t] = new Thread(() -> {
+                Page page = new Page();
+                for (int i = 0; i < READS; i++)
+                    page.read(new Block(fileName, random.nextInt(BLOCKS)));
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread reader : readers)
+            reader.start();
+        for (Thread reader : readers)
+            reader.join();
+        long elapsed = System.nanoTime() - start;
+
+        double readsPerSecond = (double) threads * READS / elapsed * 1e9;
+        System.out.println(threads + " threads" + (mapped ? ", mapped: " : ": ") + readsPerSecond + " reads/s");
+
+        JSONObject stat = new JSONObject();
+        stat.put("threads", threads);
+        stat.put("mapped", mapped);
+        stat.put("readsPerSecond", readsPerSecond);
+        return stat;
+    }
+
+    private static String fileName(int t) {
+        return "read" + t + ".tbl";
+    }
+
+    /**
+     * Metodo per rimuovere le tracce del precedente database che potrebbero inquinare i benchmark.
+     * Funziona solo su OS *nix
+     * @param dbName
+     * @throws Exception
+     */
+    private static void deleteDatabase(String dbName) throws Exception {
+        Runtime.getRuntime().exec("rm -rf " + System.getProperty("user.home") + "/" + dbName).waitFor();
+    }
+}
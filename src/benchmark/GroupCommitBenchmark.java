@@ -0,0 +1,109 @@
+package benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import simpledb.metadata.MetadataMgr;
+import simpledb.record.RecordFile;
+import simpledb.record.Schema;
+import simpledb.record.TableInfo;
+import simpledb.server.SimpleDB;
+import simpledb.stats.BasicFileStats;
+import simpledb.tx.Transaction;
+
+import java.io.PrintWriter;
+
+/**
+ * Misura le commit al secondo al variare del numero di client concorrenti,
+ * con e senza group commit.
+ * Ogni client inserisce un record nella propria tabella e fa la commit,
+ * cosi' i client non si contendono i lock.
+ * Riporta anche il numero di scritture del file di log.
+ */
+public class GroupCommitBenchmark {
+
+    private static final String DB_NAME = "groupCommitBenchDB";
+    private static final int COMMITS_PER_CLIENT = 200;
+
+    public static void main(String args[]) throws Exception {
+        JSONArray allStats = new JSONArray();
+        int[] clients = { 1, 2, 4, 8, 16 };
+        // finestra di group commit in microsecondi; -1 disabilita il group commit
+        long[] windows = { -1, 0, 500 };
+
+        for (long window : windows)
+            for (int n : clients)
+                allStats.put(measure(window, n));
+
+        PrintWriter writer = new PrintWriter("benchmark/groupcommit.json", "UTF-8");
+        writer.println(allStats);
+        writer.close();
+    }
+
+    private static JSONObject measure(long window, int clients) throws Exception {
+        deleteDatabase(DB_NAME);
+        SimpleDB.GROUP_COMMIT = window >= 0;
+        SimpleDB.GROUP_COMMIT_WINDOW = Math.max(window, 0);
+        SimpleDB.init(DB_NAME, "lru", 400, 200);
+        MetadataMgr mdMgr = SimpleDB.mdMgr();
+
+        // una tabella per client
+        TableInfo[] tables = new TableInfo[clients];
+        Transaction tx = new Transaction();
+        for (int c = 0; c < clients; c++) {
+            Schema sch = new Schema();
+            sch.addIntField("id");
+            mdMgr.createTable("t" + c, sch, tx);
+            tables[c] = mdMgr.getTableInfo("t" + c, tx);
+        }
+        tx.commit();
+        SimpleDB.fileMgr().resetMapStats();
+
+        Thread[] threads = new Thread[clients];
+        for (int c = 0; c < clients; c++) {
+            TableInfo ti = tables[c];
+            threads[c] = new Thread(() -> {
+                for (int i = 0; i < COMMITS_PER_CLIENT; i++) {
+                    Transaction t = new Transaction();
+                    RecordFile rf = new RecordFile(ti, t);
+                    rf.insert();
+                    rf.setInt("id", i);
+                    rf.close();
+                    t.commit();
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread t : threads)
+            t.start();
+        for (Thread t : threads)
+            t.join();
+        long time = System.nanoTime() - start;
+
+        BasicFileStats logStats = SimpleDB.fileMgr().getMapStats().get(SimpleDB.LOG_FILE);
+        int logWrites = (logStats == null) ? 0 : logStats.getBlockWritten();
+        int commits = clients * COMMITS_PER_CLIENT;
+        double commitsPerSecond = (double) commits / time * 1e9;
+        System.out.println("window " + window + ", " + clients + " clients: "
+                + commitsPerSecond + " commits/s, " + logWrites + " log writes");
+
+        JSONObject stat = new JSONObject();
+        stat.put("groupCommit", SimpleDB.GROUP_COMMIT);
+        stat.put("window", SimpleDB.GROUP_COMMIT_WINDOW);
+        stat.put("clients", clients);
+        stat.put("commits", commits);
+        stat.put("commitsPerSecond", commitsPerSecond);
+        stat.put("logWrites", logWrites);
+        deleteDatabase(DB_NAME);
+        return stat;
+    }
+
+    /**
+     * Metodo per rimuovere le tracce del precedente database che potrebbero inquinare i benchmark.
+     * Funziona solo su OS *nix
+     * @param dbName
+     * @throws Exception
+     */
+    private static void deleteDatabase(String dbName) throws Exception {
+        Runtime.getRuntime().exec("rm -rf " + System.getProperty("user.home") + "/" + dbName).waitFor();
+    }
+}
@@ -0,0 +1,133 @@
+package benchmark;
+
+import simpledb.file.Page;
+import simpledb.record.RecordFile;
+import simpledb.record.Schema;
+import simpledb.record.TableInfo;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Verifica che gli aggiornamenti del campo piu' largo possibile, con valori
+ * di lunghezza massima, vengano scritti nel log e recuperati correttamente.
+ * Il record setstring di questi aggiornamenti non entra in un blocco di log,
+ * quindi il recovery manager li registra come record setbytes.
+ * Il programma esegue gli aggiornamenti e un rollback in un processo figlio,
+ * che termina senza chiudere il database lasciando su disco un aggiornamento
+ * non committato, e poi verifica il risultato del recovery.
+ */
+public class LogRecordSizeCheck {
+
+    private static final String DB_NAME = "logRecordSizeDB";
+    private static final int BLOCK_SIZE = 400;
+    private static final int BUFFER_SIZE = 8;
+
+    public static void main(String args[]) throws Exception {
+        if (args.length > 0 && args[0].equals("crash")) {
+            crash();
+            return;
+        }
+        deleteDatabase(DB_NAME);
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process child = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                LogRecordSizeCheck.class.getName(), "crash").inheritIO().start();
+        if (child.waitFor() != 0)
+            throw new RuntimeException("the crash phase failed");
+        verify();
+        deleteDatabase(DB_NAME);
+    }
+
+    /**
+     * Aggiorna due volte il campo, fa il commit, annulla un terzo aggiornamento
+     * con un rollback, e termina il processo dopo un quarto aggiornamento
+     * non committato, i cui blocchi vengono scritti su disco.
+     */
+    private static void crash() {
+        SimpleDB.init(DB_NAME, "lru", BLOCK_SIZE, BUFFER_SIZE);
+        int width = widestField();
+        Transaction tx = new Transaction();
+        Schema sch = new Schema();
+        sch.addIntField("id");
+        sch.addStringField("name", width);
+        SimpleDB.mdMgr().createTable("wide", sch, tx);
+        TableInfo ti = SimpleDB.mdMgr().getTableInfo("wide", tx);
+        RecordFile rf = new RecordFile(ti, tx);
+        rf.insert();
+        rf.setInt("id", 1);
+        rf.setString("name", "");
+        rf.close();
+        tx.commit();
+
+        update(ti, repeat('x', width)).commit();
+        // il carattere piu' largo in UTF-8, per la lunghezza massima in byte
+        update(ti, repeat('\u20ac', width)).commit();
+        update(ti, repeat('y', width)).rollback();
+        check(ti, repeat('\u20ac', width), "after the rollback");
+
+        update(ti, repeat('z', width));
+        SimpleDB.bufferMgr().flushAll();
+        Runtime.getRuntime().halt(0);
+    }
+
+    /**
+     * Riapre il database, che viene recuperato dal log, e controlla
+     * che il campo contenga il valore dell'ultimo aggiornamento committato.
+     */
+    private static void verify() {
+        SimpleDB.init(DB_NAME, "lru", BLOCK_SIZE, BUFFER_SIZE);
+        Transaction tx = new Transaction();
+        TableInfo ti = SimpleDB.mdMgr().getTableInfo("wide", tx);
+        tx.commit();
+        check(ti, repeat('\u20ac', widestField()), "after the recovery");
+        System.out.println("the updates of the widest field were recovered");
+    }
+
+    private static Transaction update(TableInfo ti, String val) {
+        Transaction tx = new Transaction();
+        RecordFile rf = new RecordFile(ti, tx);
+        rf.next();
+        rf.setString("name", val);
+        rf.close();
+        return tx;
+    }
+
+    private static void check(TableInfo ti, String expected, String when) {
+        Transaction tx = new Transaction();
+        RecordFile rf = new RecordFile(ti, tx);
+        if (!rf.next() || !rf.getString("name").equals(expected))
+            throw new RuntimeException("wrong value " + when);
+        rf.close();
+        tx.commit();
+    }
+
+    /**
+     * La lunghezza del campo stringa piu' largo di un record
+     * che contiene anche un intero: il record, preceduto dal suo flag,
+     * deve entrare in un blocco.
+     */
+    private static int widestField() {
+        int width = 0;
+        while (2 * Page.INT_SIZE + Page.STR_SIZE(width + 1) <= Page.capacity())
+            width++;
+        return width;
+    }
+
+    private static String repeat(char c, int n) {
+        char[] chars = new char[n];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    /**
+     * Metodo per rimuovere le tracce del precedente database che potrebbero inquinare i benchmark.
+     * Funziona solo su OS *nix
+     * @param dbName
+     * @throws Exception
+     */
+    private static void deleteDatabase(String dbName) throws Exception {
+        Runtime.getRuntime().exec("rm -rf " + System.getProperty("user.home") + "/" + dbName).waitFor();
+    }
+}
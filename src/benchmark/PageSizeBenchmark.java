@@ -0,0 +1,109 @@
+package benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import simpledb.metadata.MetadataMgr;
+import simpledb.record.RecordFile;
+import simpledb.record.Schema;
+import simpledb.record.TableInfo;
+import simpledb.server.SimpleDB;
+import simpledb.stats.BasicFileStats;
+import simpledb.tx.Transaction;
+
+import java.io.PrintWriter;
+
+/**
+ * Confronta il numero di blocchi letti e scritti e il throughput
+ * di inserimento e di scansione al variare della dimensione dei blocchi.
+ * La memoria del buffer pool e' la stessa per tutte le dimensioni,
+ * quindi il numero di buffer e' inversamente proporzionale alla dimensione dei blocchi.
+ */
+public class PageSizeBenchmark {
+
+    private static final String DB_NAME = "pageSizeBenchDB";
+    private static final int POOL_BYTES = 2 * 1024 * 1024;
+    private static final int RECORDS = 20000;
+    private static final int SCANS = 5;
+
+    public static void main(String args[]) throws Exception {
+        JSONArray allStats = new JSONArray();
+        int[] blockSizes = { 400, 4096, 8192, 16384, 65536 };
+
+        for (int blockSize : blockSizes)
+            allStats.put(measure(blockSize));
+
+        PrintWriter writer = new PrintWriter("benchmark/pagesize.json", "UTF-8");
+        writer.println(allStats);
+        writer.close();
+    }
+
+    private static JSONObject measure(int blockSize) throws Exception {
+        deleteDatabase(DB_NAME);
+        SimpleDB.init(DB_NAME, "lru", blockSize, POOL_BYTES / blockSize);
+        MetadataMgr mdMgr = SimpleDB.mdMgr();
+
+        Transaction tx = new Transaction();
+        Schema sch = new Schema();
+        sch.addIntField("id");
+        sch.addStringField("name", 20);
+        mdMgr.createTable("students", sch, tx);
+        TableInfo ti = mdMgr.getTableInfo("students", tx);
+        tx.commit();
+        SimpleDB.fileMgr().resetMapStats();
+
+        // inserimento dei record in un'unica transazione
+        long start = System.nanoTime();
+        tx = new Transaction();
+        RecordFile rf = new RecordFile(ti, tx);
+        for (int i = 0; i < RECORDS; i++) {
+            rf.insert();
+            rf.setInt("id", i);
+            rf.setString("name", "student" + i);
+        }
+        rf.close();
+        tx.commit();
+        long insertTime = System.nanoTime() - start;
+
+        // scansioni complete della tabella
+        start = System.nanoTime();
+        for (int s = 0; s < SCANS; s++) {
+            tx = new Transaction();
+            rf = new RecordFile(ti, tx, true);
+            while (rf.next())
+                rf.getInt("id");
+            rf.close();
+            tx.commit();
+        }
+        long scanTime = System.nanoTime() - start;
+
+        int blocksRead = 0, blocksWritten = 0;
+        for (BasicFileStats stats : SimpleDB.fileMgr().getMapStats().values()) {
+            blocksRead += stats.getBlockRead();
+            blocksWritten += stats.getBlockWritten();
+        }
+        double insertsPerSecond = (double) RECORDS / insertTime * 1e9;
+        double scannedPerSecond = (double) RECORDS * SCANS / scanTime * 1e9;
+        System.out.println("blockSize " + blockSize + ": " + blocksRead + " blocks read, "
+                + blocksWritten + " blocks written, " + insertsPerSecond + " inserts/s, "
+                + scannedPerSecond + " scanned records/s");
+
+        JSONObject stat = new JSONObject();
+        stat.put("blockSize", blockSize);
+        stat.put("readBlocks", blocksRead);
+        stat.put("writtenBlocks", blocksWritten);
+        stat.put("insertsPerSecond", insertsPerSecond);
+        stat.put("scannedPerSecond", scannedPerSecond);
+        deleteDatabase(DB_NAME);
+        return stat;
+    }
+
+    /**
+     * Metodo per rimuovere le tracce del precedente database che potrebbero inquinare i benchmark.
+     * Funziona solo su OS *nix
+     * @param dbName
+     * @throws Exception
+     */
+    private static void deleteDatabase(String dbName) throws Exception {
+        Runtime.getRuntime().exec("rm -rf " + System.getProperty("user.home") + "/" + dbName).waitFor();
+    }
+}
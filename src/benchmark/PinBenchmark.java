@@ -0,0 +1,86 @@
+package benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import simpledb.buffer.Buffer;
+import simpledb.buffer.BufferMgr;
+import simpledb.buffer.PageFormatter;
+import simpledb.file.Block;
+import simpledb.server.SimpleDB;
+
+import java.io.PrintWriter;
+import java.util.Random;
+
+/**
+ * Microbenchmark che misura la latenza di pin/unpin
+ * al variare della dimensione del buffer pool.
+ * Tutti i blocchi usati sono residenti, quindi ogni pin e' un hit:
+ * il costo misurato e' quello della ricerca del blocco nel pool.
+ */
+public class PinBenchmark {
+
+    private static final String DB_NAME = "pinBenchDB";
+    private static final String FILE_NAME = "pinbench.tbl";
+    private static final int OPERATIONS = 500000;
+
+    public static void main(String args[]) throws Exception {
+        JSONArray allStats = new JSONArray();
+        int[] poolSizes = { 8, 200, 2000, 20000 };
+
+        for (int poolSize : poolSizes)
+            allStats.put(measurePinLatency(poolSize));
+
+        PrintWriter writer = new PrintWriter("benchmark/pin.json", "UTF-8");
+        writer.println(allStats);
+        writer.close();
+    }
+
+    private static JSONObject measurePinLatency(int poolSize) throws Exception {
+        deleteDatabase(DB_NAME);
+        SimpleDB.BUFFER_SIZE = poolSize;
+        SimpleDB.initFileLogAndBufferMgr(DB_NAME);
+        BufferMgr bm = SimpleDB.bufferMgr();
+
+        // riempio il pool con poolSize blocchi nuovi, che restano residenti
+        PageFormatter fmtr = p -> {};
+        Block[] blocks = new Block[poolSize];
+        for (int i = 0; i < poolSize; i++) {
+            Buffer buff = bm.pinNew(FILE_NAME, fmtr);
+            blocks[i] = buff.block();
+            bm.unpin(buff);
+        }
+
+        // riscaldamento della JVM, poi misura vera e propria
+        Random random = new Random(42);
+        runPins(bm, blocks, random, OPERATIONS);
+        long start = System.nanoTime();
+        runPins(bm, blocks, random, OPERATIONS);
+        long elapsed = System.nanoTime() - start;
+
+        double nsPerPin = (double) elapsed / OPERATIONS;
+        System.out.println("poolSize " + poolSize + ": " + nsPerPin + " ns/pin");
+
+        JSONObject stat = new JSONObject();
+        stat.put("poolSize", poolSize);
+        stat.put("nsPerPin", nsPerPin);
+        deleteDatabase(DB_NAME);
+        return stat;
+    }
+
+    private static void runPins(BufferMgr bm, Block[] blocks, Random random, int operations) {
+        for (int i = 0; i < operations; i++) {
+            Buffer buff = bm.pin(blocks[random.nextInt(blocks.length)]);
+            bm.unpin(buff);
+        }
+    }
+
+    /**
+     * Metodo per rimuovere le tracce del precedente database che potrebbero inquinare i benchmark.
+     * Funziona solo su OS *nix
+     * @param dbName
+     * @throws Exception
+     */
+    private static void deleteDatabase(String dbName) throws Exception {
+        Runtime.getRuntime().exec("rm -rf " + System.getProperty("user.home") + "/" + dbName).waitFor();
+    }
+}
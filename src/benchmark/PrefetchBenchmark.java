@@ -0,0 +1,95 @@
+package benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import simpledb.buffer.BufferMgr;
+import simpledb.metadata.MetadataMgr;
+import simpledb.record.RecordFile;
+import simpledb.record.Schema;
+import simpledb.record.TableInfo;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+import java.io.PrintWriter;
+
+/**
+ * Misura il tempo di una scansione completa di una tabella a buffer pool freddo,
+ * con e senza il prefetcher che legge in anticipo i blocchi successivi.
+ * Il database viene riaperto prima di ogni misura, cosi' il pool non contiene
+ * nessun blocco della tabella (la cache del sistema operativo invece resta calda).
+ */
+public class PrefetchBenchmark {
+
+    private static final String DB_NAME = "prefetchBenchDB";
+    private static final int BUFFER_SIZE = 200;
+    private static final int RECORDS = 30000;
+    private static final int SCANS = 5;
+
+    public static void main(String args[]) throws Exception {
+        deleteDatabase(DB_NAME);
+        SimpleDB.init(DB_NAME, "lru", 400, BUFFER_SIZE);
+        Transaction tx = new Transaction();
+        Schema sch = new Schema();
+        sch.addIntField("id");
+        sch.addStringField("name", 10);
+        SimpleDB.mdMgr().createTable("big", sch, tx);
+        TableInfo ti = SimpleDB.mdMgr().getTableInfo("big", tx);
+        RecordFile rf = new RecordFile(ti, tx);
+        for (int i = 0; i < RECORDS; i++) {
+            rf.insert();
+            rf.setInt("id", i);
+            rf.setString("name", "name" + (i % 100));
+        }
+        rf.close();
+        tx.commit();
+
+        JSONArray allStats = new JSONArray();
+        for (int depth : new int[] { 0, 8, 32 })
+            allStats.put(measureScan(depth));
+        deleteDatabase(DB_NAME);
+
+        PrintWriter writer = new PrintWriter("benchmark/prefetch.json", "UTF-8");
+        writer.println(allStats);
+        writer.close();
+    }
+
+    private static JSONObject measureScan(int depth) throws Exception {
+        long elapsed = 0;
+        for (int i = 0; i <= SCANS; i++) {
+            // riapro il database per partire con il pool vuoto
+            SimpleDB.PREFETCH_DEPTH = depth;
+            SimpleDB.initFileLogAndBufferMgr(DB_NAME);
+            Transaction tx = new Transaction();
+            SimpleDB.initMetadataMgr(false, tx);
+            MetadataMgr mdMgr = SimpleDB.mdMgr();
+            TableInfo ti = mdMgr.getTableInfo("big", tx);
+            long start = System.nanoTime();
+            RecordFile rf = new RecordFile(ti, tx);
+            while (rf.next()) {}
+            rf.close();
+            // la prima scansione serve da riscaldamento della JVM
+            if (i > 0)
+                elapsed += System.nanoTime() - start;
+            tx.commit();
+        }
+
+        double millis = elapsed / 1e6 / SCANS;
+        System.out.println("prefetch depth " + depth + ": " + millis + " ms/scan");
+
+        JSONObject stat = new JSONObject();
+        stat.put("prefetchDepth", depth);
+        stat.put("msPerScan", millis);
+        stat.put("bufferStats", BufferMgr.getBufferStats());
+        return stat;
+    }
+
+    /**
+     * Metodo per rimuovere le tracce del precedente database che potrebbero inquinare i benchmark.
+     * Funziona solo su OS *nix
+     * @param dbName
+     * @throws Exception
+     */
+    private static void deleteDatabase(String dbName) throws Exception {
+        Runtime.getRuntime().exec("rm -rf " + System.getProperty("user.home") + "/" + dbName).waitFor();
+    }
+}
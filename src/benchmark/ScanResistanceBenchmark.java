@@ -0,0 +1,136 @@
+package benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import simpledb.metadata.MetadataMgr;
+import simpledb.record.RID;
+import simpledb.record.RecordFile;
+import simpledb.record.Schema;
+import simpledb.record.TableInfo;
+import simpledb.server.SimpleDB;
+import simpledb.stats.BasicFileStats;
+import simpledb.tx.Transaction;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Misura l'hit rate di un carico di letture puntuali su una tabella piccola ("hot")
+ * mentre un altro thread esegue scansioni complete di una tabella grande ("big"),
+ * con e senza il buffer ring per le scansioni sequenziali.
+ * Le letture puntuali sono le uniche che toccano hot.tbl, quindi i blocchi letti
+ * da disco per quel file sono esattamente i loro miss.
+ */
+public class ScanResistanceBenchmark {
+
+    private static final String DB_NAME = "ringBenchDB";
+    private static final int BUFFER_SIZE = 300;
+    private static final int HOT_RECORDS = 2000;
+    private static final int BIG_RECORDS = 30000;
+    private static final int SCANS = 3;
+
+    public static void main(String args[]) throws Exception {
+        JSONArray allStats = new JSONArray();
+        for (String strategy : new String[] { "lru", "clock", "lruk" }) {
+            allStats.put(run(strategy, false));
+            allStats.put(run(strategy, true));
+        }
+        PrintWriter writer = new PrintWriter("benchmark/ring.json", "UTF-8");
+        writer.println(allStats);
+        writer.close();
+    }
+
+    private static JSONObject run(String strategy, boolean useRing) throws Exception {
+        deleteDatabase(DB_NAME);
+        SimpleDB.init(DB_NAME, strategy, 400, BUFFER_SIZE);
+        MetadataMgr mdMgr = SimpleDB.mdMgr();
+
+        Transaction tx = new Transaction();
+        Schema sch = new Schema();
+        sch.addIntField("id");
+        sch.addStringField("name", 10);
+        mdMgr.createTable("hot", sch, tx);
+        mdMgr.createTable("big", sch, tx);
+        TableInfo hot = mdMgr.getTableInfo("hot", tx);
+        TableInfo big = mdMgr.getTableInfo("big", tx);
+        List<RID> rids = fill(hot, HOT_RECORDS, tx);
+        fill(big, BIG_RECORDS, tx);
+        tx.commit();
+
+        // porto in memoria la tabella hot prima di iniziare
+        tx = new Transaction();
+        RecordFile rf = new RecordFile(hot, tx);
+        while (rf.next()) {}
+        rf.close();
+        tx.commit();
+
+        BasicFileStats hotStats = SimpleDB.fileMgr().getMapStats().get(hot.fileName());
+        int readsBefore = hotStats.getBlockRead();
+
+        // il thread di scansione legge più volte tutta la tabella big
+        final boolean[] scanning = { true };
+        Thread scanner = new Thread(() -> {
+            Transaction stx = new Transaction();
+            for (int i = 0; i < SCANS; i++) {
+                RecordFile scan = new RecordFile(big, stx, useRing);
+                while (scan.next()) {}
+                scan.close();
+            }
+            stx.commit();
+            scanning[0] = false;
+        });
+        scanner.start();
+
+        // nel frattempo eseguo letture puntuali sulla tabella hot
+        Random random = new Random(42);
+        int lookups = 0;
+        tx = new Transaction();
+        RecordFile lookup = new RecordFile(hot, tx);
+        while (scanning[0]) {
+            lookup.moveToRid(rids.get(random.nextInt(rids.size())));
+            lookup.getInt("id");
+            lookups++;
+        }
+        lookup.close();
+        tx.commit();
+        scanner.join();
+
+        int misses = hotStats.getBlockRead() - readsBefore;
+        double hitRate = 1 - (double) misses / lookups;
+        String statName = strategy + (useRing ? ", ring" : ", no ring");
+        System.out.println(statName + ": " + lookups + " lookups, " + misses + " misses, hit rate " + hitRate);
+
+        JSONObject stat = new JSONObject();
+        stat.put("statName", statName);
+        stat.put("lookups", lookups);
+        stat.put("misses", misses);
+        stat.put("hitRate", hitRate);
+        deleteDatabase(DB_NAME);
+        return stat;
+    }
+
+    private static List<RID> fill(TableInfo ti, int count, Transaction tx) {
+        List<RID> rids = new ArrayList<RID>();
+        RecordFile rf = new RecordFile(ti, tx);
+        for (int i = 0; i < count; i++) {
+            rf.insert();
+            rf.setInt("id", i);
+            rf.setString("name", "name" + (i % 100));
+            rids.add(rf.currentRid());
+        }
+        rf.close();
+        return rids;
+    }
+
+    /**
+     * Metodo per rimuovere le tracce del precedente database che potrebbero inquinare i benchmark.
+     * Funziona solo su OS *nix
+     * @param dbName
+     * @throws Exception
+     */
+    private static void deleteDatabase(String dbName) throws Exception {
+        Runtime.getRuntime().exec("rm -rf " + System.getProperty("user.home") + "/" + dbName).waitFor();
+    }
+}
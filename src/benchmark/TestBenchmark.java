@@ -2,6 +2,7 @@ package benchmark;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
+import simpledb.buffer.BufferMgr;
 import simpledb.metadata.MetadataMgr;
 import simpledb.record.RecordFile;
 import simpledb.record.Schema;
@@ -21,12 +22,15 @@ public class TestBenchmark {
         generateStats("Naif, BufferSize: 8", "studentDB", "naif", 400, 8);
         generateStats("LRU, BufferSize: 8", "studentDB", "lru", 400, 8);
         generateStats("Clock, BufferSize: 8", "studentDB", "clock", 400, 8);
+        generateStats("LRU-K, BufferSize: 8", "studentDB", "lruk", 400, 8);
 
         generateStats("LRU, BufferSize: 2000", "studentDB", "lru", 400, 2000);
         generateStats("Clock, BufferSize: 2000", "studentDB", "clock", 400, 2000);
+        generateStats("LRU-K, BufferSize: 2000", "studentDB", "lruk", 400, 2000);
 
         generateStats("LRU, BufferSize: 20000", "studentDB", "lru", 400, 20000);
         generateStats("Clock, BufferSize: 20000", "studentDB", "clock", 400, 20000);
+        generateStats("LRU-K, BufferSize: 20000", "studentDB", "lruk", 400, 20000);
 
         PrintWriter writer = new PrintWriter("benchmark/data.json", "UTF-8");
         writer.println(allStats);
@@ -82,19 +86,22 @@ public class TestBenchmark {
         singleStat = new JSONObject();
         singleStat.put("type", "insert10000");
         singleStat.put("data", SimpleDB.fileMgr().getAllBlockStats());
+        singleStat.put("bufferStats", BufferMgr.getBufferStats());
         data.put(singleStat);
         tx.commit();
 
         // leggo tutti i 10000 record dalla tabella students
+        // la scansione completa usa un record file sequenziale, che ricicla un piccolo anello di buffer
         System.out.println("\n\nLeggo tutti i 10000 record dalla tabella students");
         tx = new Transaction();
         ti = mdMgr.getTableInfo("students", tx);
-        tcatfile = new RecordFile(ti, tx);
+        tcatfile = new RecordFile(ti, tx, true);
         while (tcatfile.next()) {}
         tcatfile.close();
         singleStat = new JSONObject();
         singleStat.put("type", "scanTable");
         singleStat.put("data", SimpleDB.fileMgr().getAllBlockStats());
+        singleStat.put("bufferStats", BufferMgr.getBufferStats());
         data.put(singleStat);
         System.out.println(singleStat.get("data"));
         tx.commit();
@@ -113,6 +120,7 @@ public class TestBenchmark {
         singleStat = new JSONObject();
         singleStat.put("type", "deleteHalf");
         singleStat.put("data", SimpleDB.fileMgr().getAllBlockStats());
+        singleStat.put("bufferStats", BufferMgr.getBufferStats());
         data.put(singleStat);
         tx.commit();
 
@@ -120,7 +128,7 @@ public class TestBenchmark {
         System.out.println("\n\nCancello metà dei record");
         tx = new Transaction();
         ti = mdMgr.getTableInfo("students", tx);
-        tcatfile = new RecordFile(ti, tx);
+        tcatfile = new RecordFile(ti, tx, true);
         while (tcatfile.next()) {
             if(tcatfile.getString("gender").equals("M")) {
                 System.out.println(statName);
@@ -130,6 +138,7 @@ public class TestBenchmark {
         singleStat = new JSONObject();
         singleStat.put("type", "selectiveScan");
         singleStat.put("data", SimpleDB.fileMgr().getAllBlockStats());
+        singleStat.put("bufferStats", BufferMgr.getBufferStats());
         data.put(singleStat);
         tx.commit();
 
@@ -148,6 +157,7 @@ public class TestBenchmark {
         singleStat = new JSONObject();
         singleStat.put("type", "insert7000");
         singleStat.put("data", SimpleDB.fileMgr().getAllBlockStats());
+        singleStat.put("bufferStats", BufferMgr.getBufferStats());
         data.put(singleStat);
         tx.commit();
 
@@ -2,16 +2,31 @@ package simpledb.buffer;
 
 import simpledb.file.*;
 import simpledb.server.SimpleDB;
+import simpledb.stats.BasicBufferStats;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.*;
 
 /**
  * Manages the pinning and unpinning of buffers to blocks.
+ * Each instance manages one partition of the buffer pool,
+ * and its methods hold the partition's latch.
+ * A client that needs a simpledb.buffer when none is available
+ * joins the partition's wait queue.
+ * The queue is served in FIFO order: each simpledb.buffer that
+ * becomes available is assigned directly to the oldest waiter,
+ * which is then the only one to be woken up.
  * @author Edward Sciore
  *
  */
 class BasicBufferMgr {
    private Buffer[] bufferpool;
+   private Map<Block,Buffer> bufferPoolMap;
    private int numAvailable;
-   private int latestPinned;
+   private ReplacementStrategy strategy;
+   private BufferMgr owner;
+   private ReentrantLock latch = new ReentrantLock();
+   private Deque<Waiter> waiters = new ArrayDeque<Waiter>();
 
    /**
     * Creates a simpledb.buffer manager having the specified number
@@ -25,22 +40,180 @@ class BasicBufferMgr {
     * {@link simpledb.server.SimpleDB#initFileAndLogMgr(String)} or
     * is called first.
     * @param numbuffs the number of simpledb.buffer slots to allocate
+    * @param owner the simpledb.buffer manager the partition belongs to,
+    * which keeps the statistics of the whole pool
     */
-   BasicBufferMgr(int numbuffs) {
+   BasicBufferMgr(int numbuffs, BufferMgr owner) {
+      this.owner = owner;
       bufferpool = new Buffer[numbuffs];
+      bufferPoolMap = new HashMap<Block,Buffer>(numbuffs * 2);
       numAvailable = numbuffs;
       for (int i=0; i<numbuffs; i++)
          bufferpool[i] = new Buffer();
+      strategy = createStrategy(SimpleDB.STRATEGY);
    }
    
    /**
-    * Flushes the dirty buffers modified by the specified transaction.
-    * @param txnum the transaction's id number
+    * Pins the dirty buffers of the partition, so that
+    * they can be flushed without holding its latch.
+    * @param buffs the list the pinned buffers are added to
     */
-   synchronized void flushAll(int txnum) {
-      for (Buffer buff : bufferpool)
-         if (buff.isModifiedBy(txnum))
+   void pinModified(List<Buffer> buffs) {
+      latch.lock();
+      try {
+         for (Buffer buff : bufferpool)
+            if (buff.isModified()) {
+               if (!buff.isPinned())
+                  numAvailable--;
+               buff.pin();
+               strategy.pinned(buff);
+               buffs.add(buff);
+            }
+      }
+      finally {
+         latch.unlock();
+      }
+   }
+   
+   /**
+    * Waits for the end of the modifications in progress
+    * on the buffers of the partition, by latching each buffer
+    * in shared mode and releasing it at once.
+    * The partition itself is not latched.
+    */
+   void awaitModifications() {
+      for (Buffer buff : bufferpool) {
+         buff.latchShared();
+         buff.unlatchShared();
+      }
+   }
+   
+   /**
+    * Collects the blocks of the dirty buffers that are
+    * cold, that is unpinned and not pinned since
+    * the previous call of this method.
+    * The other unpinned dirty buffers are marked as cold,
+    * so that they are collected next time unless they
+    * are pinned in the meantime.
+    * @param blocks the list the blocks are added to
+    */
+   void collectColdBlocks(List<Block> blocks) {
+      latch.lock();
+      try {
+         for (Buffer buff : bufferpool)
+            if (buff.isModified() && !buff.isPinned()) {
+               if (buff.isCold())
+                  blocks.add(buff.block());
+               else
+                  buff.markCold();
+            }
+      }
+      finally {
+         latch.unlock();
+      }
+   }
+   
+   /**
+    * Writes the buffer assigned to the specified block,
+    * if it is still dirty and cold.
+    * The buffer is pinned while it is written, so that
+    * the partition is not latched during the write.
+    * @param blk a reference to a disk block
+    */
+   void writeIfCold(Block blk) {
+      Buffer buff;
+      latch.lock();
+      try {
+         buff = findExistingBuffer(blk);
+         if (buff == null || !buff.isModified() || buff.isPinned() || !buff.isCold())
+            return;
+         numAvailable--;
+         buff.pin();
+         strategy.pinned(buff);
+      }
+      finally {
+         latch.unlock();
+      }
+      try {
          buff.flush();
+         owner.statsFor(blk.fileName()).incrementBackgroundWrites();
+      }
+      finally {
+         unpin(buff);
+      }
+   }
+   
+   /**
+    * Pins a simpledb.buffer to the specified block, waiting
+    * in the partition's queue if no simpledb.buffer is available.
+    * If there is already a simpledb.buffer assigned to that block
+    * then that simpledb.buffer is used at once;
+    * otherwise, the client waits behind the clients already
+    * in the queue, so that a late client cannot take
+    * the buffers that older ones are waiting for.
+    * A {@link BufferAbortException} is thrown if no simpledb.buffer
+    * is assigned to the client within the specified time.
+    * @param blk a reference to a disk block
+    * @param ring the scan's buffer ring, or null
+    * @param timeout the maximum waiting time, in milliseconds
+    * @return the pinned simpledb.buffer
+    */
+   Buffer pin(Block blk, BufferRing ring, long timeout) {
+      return pin(blk, ring, null, 0, timeout);
+   }
+   
+   /**
+    * Pins a simpledb.buffer to the specified block, like
+    * {@link #pin(Block, BufferRing, long)}, but takes the
+    * contents of the block from the specified page
+    * if the block is not in the pool.
+    * @param blk a reference to a disk block
+    * @param ring the scan's buffer ring, or null
+    * @param loaded the contents of the block, or null
+    * @param writeCount the write count of the simpledb.file before the page was read
+    * @param timeout the maximum waiting time, in milliseconds
+    * @return the pinned simpledb.buffer
+    */
+   Buffer pin(Block blk, BufferRing ring, Page loaded, long writeCount, long timeout) {
+      latch.lock();
+      try {
+         Buffer buff = null;
+         if (waiters.isEmpty() || findExistingBuffer(blk) != null)
+            buff = tryPin(blk, ring, loaded, writeCount);
+         if (buff == null)
+            buff = await(new Waiter(blk, ring, null, null), timeout);
+         return buff;
+      }
+      finally {
+         latch.unlock();
+      }
+   }
+   
+   /**
+    * Allocates a new block in the specified simpledb.file, and
+    * pins a simpledb.buffer to it, waiting in the partition's queue
+    * if no simpledb.buffer is available.
+    * A {@link BufferAbortException} is thrown (without allocating
+    * the block) if no simpledb.buffer is assigned to the client
+    * within the specified time.
+    * @param filename the name of the simpledb.file
+    * @param fmtr a pageformatter object, used to format the new block
+    * @param timeout the maximum waiting time, in milliseconds
+    * @return the pinned simpledb.buffer
+    */
+   Buffer pinNew(String filename, PageFormatter fmtr, long timeout) {
+      latch.lock();
+      try {
+         Buffer buff = null;
+         if (waiters.isEmpty())
+            buff = tryPinNew(filename, fmtr);
+         if (buff == null)
+            buff = await(new Waiter(null, null, filename, fmtr), timeout);
+         return buff;
+      }
+      finally {
+         latch.unlock();
+      }
    }
    
    /**
@@ -48,51 +221,132 @@ class BasicBufferMgr {
     * If there is already a simpledb.buffer assigned to that block
     * then that simpledb.buffer is used;
     * otherwise, an unpinned simpledb.buffer from the pool is chosen.
+    * If a ring is specified, an unpinned buffer of the ring
+    * is preferred to the one chosen by the replacement strategy.
     * Returns a null value if there are no available buffers.
+    * Called while holding the latch.
     * @param blk a reference to a disk block
+    * @param ring the scan's buffer ring, or null
+    * @param loaded the contents of the block, or null to read them
+    * @param writeCount the write count of the simpledb.file before the page was read
     * @return the pinned simpledb.buffer
     */
-   synchronized Buffer pin(Block blk) {
+   private Buffer tryPin(Block blk, BufferRing ring, Page loaded, long writeCount) {
+      BasicBufferStats stats = owner.statsFor(blk.fileName());
       Buffer buff = findExistingBuffer(blk);
-      if (buff == null) {
-         buff = chooseUnpinnedBuffer();
+      if (buff != null)
+         stats.incrementHits();
+      else {
+         if (ring != null)
+            buff = ring.reusableBuffer(this);
+         if (buff == null)
+            buff = strategy.chooseUnpinnedBuffer();
          if (buff == null)
             return null;
-         buff.assignToBlock(blk);
+         stats.incrementMisses();
+         assignToBlock(buff, blk, loaded, writeCount);
+         if (ring != null)
+            ring.loaded(this, buff);
       }
       if (!buff.isPinned())
          numAvailable--;
       buff.pin();
+      strategy.pinned(buff);
+      stats.incrementPins();
       return buff;
    }
    
+   /**
+    * Reads the specified block into an unpinned simpledb.buffer
+    * without pinning it, so that a later pin finds it in the pool.
+    * Nothing is done if the block is already in the pool,
+    * or if no more than the specified number of
+    * buffers are available, since those are kept for the
+    * clients' pins, or if some client is waiting for a simpledb.buffer.
+    * The replacement strategy sees the read as a pin
+    * immediately followed by an unpin.
+    * @param blk a reference to a disk block
+    * @param reserve the number of available buffers to keep
+    * @param loaded the contents of the block, or null to read them
+    * @param writeCount the write count of the simpledb.file before the page was read
+    * @return true if the block has been read
+    */
+   boolean prefetch(Block blk, int reserve, Page loaded, long writeCount) {
+      latch.lock();
+      try {
+         if (numAvailable <= reserve || !waiters.isEmpty()
+               || findExistingBuffer(blk) != null)
+            return false;
+         Buffer buff = strategy.chooseUnpinnedBuffer();
+         if (buff == null)
+            return false;
+         owner.statsFor(blk.fileName()).incrementPrefetches();
+         assignToBlock(buff, blk, loaded, writeCount);
+         strategy.pinned(buff);
+         strategy.unpinned(buff);
+         return true;
+      }
+      finally {
+         latch.unlock();
+      }
+   }
+   
    /**
     * Allocates a new block in the specified simpledb.file, and
     * pins a simpledb.buffer to it.
     * Returns null (without allocating the block) if 
     * there are no available buffers.
+    * Called while holding the latch.
     * @param filename the name of the simpledb.file
     * @param fmtr a pageformatter object, used to format the new block
     * @return the pinned simpledb.buffer
     */
-   synchronized Buffer pinNew(String filename, PageFormatter fmtr) {
-      Buffer buff = chooseUnpinnedBuffer();
+   private Buffer tryPinNew(String filename, PageFormatter fmtr) {
+      Buffer buff = strategy.chooseUnpinnedBuffer();
       if (buff == null)
          return null;
-      buff.assignToNew(filename, fmtr);
+      assignToNew(buff, filename, fmtr);
       numAvailable--;
       buff.pin();
+      strategy.pinned(buff);
+      owner.statsFor(filename).incrementPins();
       return buff;
    }
    
    /**
     * Unpins the specified simpledb.buffer.
+    * If the simpledb.buffer becomes available and clients are waiting,
+    * it is assigned to the oldest of them.
     * @param buff the simpledb.buffer to be unpinned
     */
-   synchronized void unpin(Buffer buff) {
-      buff.unpin();
-      if (!buff.isPinned())
-         numAvailable++;
+   void unpin(Buffer buff) {
+      latch.lock();
+      try {
+         buff.unpin();
+         if (!buff.isPinned()) {
+            numAvailable++;
+            strategy.unpinned(buff);
+            handOff();
+         }
+      }
+      finally {
+         latch.unlock();
+      }
+   }
+   
+   /**
+    * Returns true if a simpledb.buffer is assigned to the specified block.
+    * @param blk a reference to a disk block
+    * @return true if the block is in the partition
+    */
+   boolean contains(Block blk) {
+      latch.lock();
+      try {
+         return findExistingBuffer(blk) != null;
+      }
+      finally {
+         latch.unlock();
+      }
    }
    
    /**
@@ -103,70 +357,208 @@ class BasicBufferMgr {
       return numAvailable;
    }
    
-   private Buffer findExistingBuffer(Block blk) {
-      for (Buffer buff : bufferpool) {
-         Block b = buff.block();
-         if (b != null && b.equals(blk))
-            return buff;
+   /**
+    * Returns the number of times each simpledb.buffer
+    * of the partition has been pinned.
+    * @return the pin counts, one per simpledb.buffer
+    */
+   long[] pinCounts() {
+      long[] counts = new long[bufferpool.length];
+      for (int i=0; i<bufferpool.length; i++)
+         counts[i] = bufferpool[i].totalPins();
+      return counts;
+   }
+   
+   /**
+    * Puts the client at the end of the wait queue,
+    * and waits until a simpledb.buffer is assigned to it or
+    * the specified time has elapsed.
+    * Called while holding the latch, which is released
+    * during the wait.
+    * @param w the client's request
+    * @param timeout the maximum waiting time, in milliseconds
+    * @return the pinned simpledb.buffer
+    */
+   private Buffer await(Waiter w, long timeout) {
+      long start = System.nanoTime();
+      long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+      BasicBufferStats stats = owner.statsFor(w.blk != null ? w.blk.fileName() : w.filename);
+      waiters.add(w);
+      stats.incrementWaits();
+      try {
+         while (w.buff == null && w.error == null && nanos > 0)
+            nanos = w.ready.awaitNanos(nanos);
+      }
+      catch (InterruptedException e) {
+         // treated as a timeout, unless a simpledb.buffer has been assigned;
+         // the interrupt is restored for the caller to see
+         Thread.currentThread().interrupt();
       }
-      return null;
+      stats.addWaitTime(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      if (w.error != null)
+         throw w.error;
+      if (w.buff == null) {
+         waiters.remove(w);
+         stats.incrementAborts();
+         throw new BufferAbortException();
+      }
+      return w.buff;
    }
    
-   private Buffer chooseUnpinnedBuffer() {
-      switch (SimpleDB.STRATEGY) {
-         case "naif":
-            return chooseUnpinnedBufferNaif();
-         case "clock":
-            return chooseUnpinnedBufferClock();
-         case "lru":
-            return chooseUnpinnedBufferLRU();
+   /**
+    * Serves the waiting clients in FIFO order, as long as
+    * there are available buffers: the simpledb.buffer is pinned
+    * on behalf of the oldest client, which is then signalled.
+    * An error reading the client's block is passed on to the client.
+    * Called while holding the latch.
+    */
+   private void handOff() {
+      while (numAvailable > 0 && !waiters.isEmpty()) {
+         Waiter w = waiters.peek();
+         try {
+            if (w.blk != null)
+               w.buff = tryPin(w.blk, w.ring, null, 0);
+            else
+               w.buff = tryPinNew(w.filename, w.fmtr);
+         }
+         catch (RuntimeException e) {
+            w.error = e;
+         }
+         if (w.buff == null && w.error == null)
+            return;
+         waiters.poll();
+         w.ready.signal();
       }
-      return null;
    }
-
-   private Buffer chooseUnpinnedBufferNaif() {
-      for (Buffer buff : bufferpool)
-         if (!buff.isPinned())
-            return buff;
-      return null;
+   
+   /**
+    * Looks up the buffer assigned to the specified block
+    * in the page table, in constant time.
+    * @param blk a reference to a disk block
+    * @return the buffer assigned to that block, or null
+    */
+   private Buffer findExistingBuffer(Block blk) {
+      return bufferPoolMap.get(blk);
    }
 
-   private Buffer chooseUnpinnedBufferClock() {
-      int length = bufferpool.length;
-      for(int i = latestPinned; i < length; i++) {
-         if (!bufferpool[i].isPinned()) {
-            this.latestPinned = i;
-            return bufferpool[i];
-         }
+   /**
+    * Assigns the chosen simpledb.buffer to the specified block.
+    * The page table and the replacement strategy are
+    * updated only once the assignment has succeeded.
+    * @param buff the buffer chosen for replacement
+    * @param blk a reference to a disk block
+    * @param loaded the contents of the block, or null to read them
+    * @param writeCount the write count of the simpledb.file before the page was read
+    */
+   private void assignToBlock(Buffer buff, Block blk, Page loaded, long writeCount) {
+      Block old = buff.block();
+      boolean dirty = buff.isModified();
+      try {
+         buff.assignToBlock(blk, loaded, writeCount);
       }
-      for(int i = 0; i < latestPinned; i++) {
-         if (!bufferpool[i].isPinned()) {
-            this.latestPinned = i;
-            return bufferpool[i];
-         }
+      catch (RuntimeException e) {
+         abandon(buff, old);
+         throw e;
       }
-      return null;
+      evicted(buff, old, dirty);
    }
 
-   private Buffer chooseUnpinnedBufferLRU() {
-      Buffer buffer = null;
-
-      for (int i = 0; i < bufferpool.length; i++) {
-         if (!bufferpool[i].isPinned()) {
-            buffer = bufferpool[i];
-            break;
-         }
+   /**
+    * Assigns the chosen simpledb.buffer to a new block
+    * of the specified simpledb.file, like
+    * {@link #assignToBlock(Buffer, Block, Page, long)}.
+    * @param buff the buffer chosen for replacement
+    * @param filename the name of the simpledb.file
+    * @param fmtr a pageformatter object, used to format the new block
+    */
+   private void assignToNew(Buffer buff, String filename, PageFormatter fmtr) {
+      Block old = buff.block();
+      boolean dirty = buff.isModified();
+      try {
+         buff.assignToNew(filename, fmtr);
       }
-
-      for(int i = 0; i < bufferpool.length; i++) {
-         if(!bufferpool[i].isPinned() && bufferpool[i].getLatestUsage() < buffer.getLatestUsage()) {
-            buffer = bufferpool[i];
-         }
+      catch (RuntimeException e) {
+         abandon(buff, old);
+         throw e;
       }
+      evicted(buff, old, dirty);
+   }
 
-      buffer.setLatestUsage(System.currentTimeMillis());
-
-      return buffer;
+   /**
+    * Undoes a failed assignment.
+    * If the previous page could not be written, the buffer
+    * still holds its block, and nothing changes.
+    * Otherwise the previous page has been written but the
+    * new one could not be read, so the buffer holds no
+    * block: its page table entry is removed, and it stays
+    * with the replacement strategy as an unpinned buffer.
+    * @param buff the buffer chosen for replacement
+    * @param old the block previously held by the buffer, or null
+    */
+   private void abandon(Buffer buff, Block old) {
+      if (old != null && buff.block() == null)
+         bufferPoolMap.remove(old);
    }
 
+   /**
+    * Moves the page table entry of a reassigned buffer
+    * to its new block, and tells the replacement strategy,
+    * counting the eviction of the previous block, if any.
+    * @param buff the reassigned buffer
+    * @param old the block previously held by the buffer, or null
+    * @param dirty true if the previous page had to be written
+    */
+   private void evicted(Buffer buff, Block old, boolean dirty) {
+      if (old != null) {
+         BasicBufferStats stats = owner.statsFor(old.fileName());
+         stats.incrementEvictions();
+         if (dirty)
+            stats.incrementDirtyEvictions();
+         bufferPoolMap.remove(old);
+      }
+      bufferPoolMap.put(buff.block(), buff);
+      strategy.assigned(buff);
+   }
+   
+   /**
+    * Creates the replacement strategy named by
+    * {@link simpledb.server.SimpleDB#STRATEGY}.
+    * @param name the name of the strategy
+    * @return the strategy for this partition's buffers
+    */
+   private ReplacementStrategy createStrategy(String name) {
+      switch (name) {
+         case "naif":
+            return new NaifStrategy(bufferpool);
+         case "clock":
+            return new ClockStrategy(bufferpool);
+         case "lru":
+            return new LRUStrategy(bufferpool);
+         case "lruk":
+            return new LRUKStrategy(bufferpool);
+      }
+      throw new RuntimeException("unknown replacement strategy " + name);
+   }
+   
+   /**
+    * A client waiting for a simpledb.buffer: either the pin
+    * of an existing block, or the pin of a new block
+    * of the specified simpledb.file.
+    */
+   private class Waiter {
+      Block blk;
+      BufferRing ring;
+      String filename;
+      PageFormatter fmtr;
+      Condition ready = latch.newCondition();
+      Buffer buff = null;
+      RuntimeException error = null;
+      
+      Waiter(Block blk, BufferRing ring, String filename, PageFormatter fmtr) {
+         this.blk = blk;
+         this.ring = ring;
+         this.filename = filename;
+         this.fmtr = fmtr;
+      }
+   }
 }
@@ -2,6 +2,8 @@ package simpledb.buffer;
 
 import simpledb.server.SimpleDB;
 import simpledb.file.*;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * An individual simpledb.buffer.
@@ -11,15 +13,30 @@ import simpledb.file.*;
  * whether the contents of the page have been modified,
  * and if so, the id of the modifying transaction and
  * the LSN of the corresponding simpledb.log simpledb.record.
+ * Each simpledb.buffer has a shared/exclusive latch that
+ * protects its page while it is pinned:
+ * modifications are made while the client holds it in exclusive mode,
+ * and writes of the page to disk hold it in shared mode,
+ * so that a page is never written while half-modified.
+ * The simpledb.buffer does not take the latch for each modification:
+ * the client takes it once for its whole visit of the page
+ * (see {@link simpledb.tx.Transaction#latchExclusive(Block)}).
+ * Reads do not take the latch, since the transaction's lock on
+ * the block already excludes concurrent modifications.
  * @author Edward Sciore
  */
 public class Buffer {
    private Page contents = new Page();
    private Block blk = null;
    private int pins = 0;
+   private long totalPins = 0;
    private int modifiedBy = -1;  // negative means not modified
-   private int logSequenceNumber = -1; // negative means no corresponding simpledb.log simpledb.record
-   private long latestUsage = 0;
+   private long logSequenceNumber = -1; // negative means no corresponding simpledb.log simpledb.record
+   private boolean referenced = false;
+   private boolean cold = false;
+   private Buffer lruPrev = null, lruNext = null;
+   private long lastRef = 0, penultimateRef = 0;
+   private final ReentrantReadWriteLock latch = new ReentrantReadWriteLock();
 
    /**
     * Creates a new simpledb.buffer, wrapping a new
@@ -61,6 +78,28 @@ public class Buffer {
       return contents.getString(offset);
    }
 
+   /**
+    * Returns a copy of the bytes at the specified offset of the
+    * simpledb.buffer's page.
+    * @param offset the byte offset of the page
+    * @param n the number of bytes
+    * @return the bytes at that offset
+    */
+   public byte[] getBytes(int offset, int n) {
+      return contents.getBytes(offset, n);
+   }
+
+   /**
+    * Compares the string at the specified offset of the
+    * simpledb.buffer's page with the specified string, in place.
+    * @param offset the byte offset of the page
+    * @param val the string to compare with
+    * @return the sign of the comparison of the stored string with val
+    */
+   public int compareString(int offset, String val) {
+      return contents.compareString(offset, val);
+   }
+
    /**
     * Writes an integer to the specified offset of the
     * simpledb.buffer's page.
@@ -70,15 +109,14 @@ public class Buffer {
     * and the LSN of the simpledb.log simpledb.record.
     * A negative lsn value indicates that a simpledb.log simpledb.record
     * was not necessary.
+    * The caller must hold the simpledb.buffer's latch in exclusive mode.
     * @param offset the byte offset within the page
     * @param val the new integer value to be written
     * @param txnum the id of the transaction performing the modification
     * @param lsn the LSN of the corresponding simpledb.log simpledb.record
     */
-   public void setInt(int offset, int val, int txnum, int lsn) {
-      modifiedBy = txnum;
-      if (lsn >= 0)
-	      logSequenceNumber = lsn;
+   public void setInt(int offset, int val, int txnum, long lsn) {
+      modified(txnum, lsn);
       contents.setInt(offset, val);
    }
 
@@ -91,16 +129,71 @@ public class Buffer {
     * was not necessary.
     * The simpledb.buffer saves the id of the transaction
     * and the LSN of the simpledb.log simpledb.record.
+    * The caller must hold the simpledb.buffer's latch in exclusive mode.
     * @param offset the byte offset within the page
     * @param val the new string value to be written
     * @param txnum the id of the transaction performing the modification
     * @param lsn the LSN of the corresponding simpledb.log simpledb.record
     */
-   public void setString(int offset, String val, int txnum, int lsn) {
+   public void setString(int offset, String val, int txnum, long lsn) {
+      modified(txnum, lsn);
+      contents.setString(offset, val);
+   }
+
+   /**
+    * Writes the specified bytes to the specified offset of the
+    * simpledb.buffer's page, as {@link #setString(int, String, int, long) setString}
+    * does for a string.
+    * It is used by the recovery manager to redo and undo
+    * the updates logged as ranges of bytes.
+    * The caller must hold the simpledb.buffer's latch in exclusive mode.
+    * @param offset the byte offset within the page
+    * @param val the bytes to be written
+    * @param txnum the id of the transaction performing the modification
+    * @param lsn the LSN of the corresponding simpledb.log simpledb.record
+    */
+   public void setBytes(int offset, byte[] val, int txnum, long lsn) {
+      modified(txnum, lsn);
+      contents.setBytes(offset, val);
+   }
+
+   private void modified(int txnum, long lsn) {
+      if (!latch.isWriteLockedByCurrentThread())
+         throw new RuntimeException("simpledb.buffer of block " + blk + " modified without its latch");
       modifiedBy = txnum;
       if (lsn >= 0)
-	      logSequenceNumber = lsn;
-      contents.setString(offset, val);
+         logSequenceNumber = lsn;
+   }
+
+   /**
+    * Acquires the simpledb.buffer's latch in shared mode,
+    * waiting while another thread modifies the page.
+    */
+   public void latchShared() {
+      latch.readLock().lock();
+   }
+
+   /**
+    * Releases the simpledb.buffer's latch in shared mode.
+    */
+   public void unlatchShared() {
+      latch.readLock().unlock();
+   }
+
+   /**
+    * Acquires the simpledb.buffer's latch in exclusive mode,
+    * waiting while other threads read or write the page.
+    * The latch is reentrant.
+    */
+   public void latchExclusive() {
+      latch.writeLock().lock();
+   }
+
+   /**
+    * Releases the simpledb.buffer's latch in exclusive mode.
+    */
+   public void unlatchExclusive() {
+      latch.writeLock().unlock();
    }
 
    /**
@@ -118,20 +211,69 @@ public class Buffer {
     * The method ensures that the corresponding simpledb.log
     * simpledb.record has been written to disk prior to writing
     * the page to disk.
+    * The write-backs that have to write the simpledb.log first
+    * are counted in the simpledb.buffer statistics.
     */
    void flush() {
-      if (modifiedBy >= 0) {
-         SimpleDB.logMgr().flush(logSequenceNumber);
-         contents.write(blk);
-         modifiedBy = -1;
+      latchShared();
+      try {
+         if (modifiedBy >= 0) {
+            if (SimpleDB.logMgr().flush(logSequenceNumber))
+               SimpleDB.bufferMgr().statsFor(blk.fileName()).incrementLogFlushes();
+            contents.write(blk);
+            modifiedBy = -1;
+         }
+      }
+      finally {
+         unlatchShared();
+      }
+   }
+
+   /**
+    * Writes the pages of the specified buffers to disk
+    * with a single write.
+    * The buffers must be pinned, dirty, and assigned to
+    * consecutive blocks of the same simpledb.file, in block order.
+    * The simpledb.log is first flushed up to the most recent
+    * simpledb.log simpledb.record of the pages.
+    * @param run the buffers to be written
+    */
+   static void flush(List<Buffer> run) {
+      if (run.size() == 1) {
+         run.get(0).flush();
+         return;
+      }
+      for (Buffer buff : run)
+         buff.latchShared();
+      try {
+         long lsn = -1;
+         Page[] pages = new Page[run.size()];
+         for (int i=0; i<pages.length; i++) {
+            Buffer buff = run.get(i);
+            lsn = Math.max(lsn, buff.logSequenceNumber);
+            pages[i] = buff.contents;
+         }
+         if (SimpleDB.logMgr().flush(lsn))
+            SimpleDB.bufferMgr().statsFor(run.get(0).blk.fileName()).incrementLogFlushes();
+         Page.writeRange(run.get(0).blk, pages);
+         for (Buffer buff : run)
+            buff.modifiedBy = -1;
+      }
+      finally {
+         for (Buffer buff : run)
+            buff.unlatchShared();
       }
    }
 
    /**
-    * Increases the simpledb.buffer's pin count.
+    * Increases the simpledb.buffer's pin count,
+    * sets its reference bit and marks it as no longer cold.
     */
    void pin() {
       pins++;
+      totalPins++;
+      referenced = true;
+      cold = false;
    }
 
    /**
@@ -141,6 +283,15 @@ public class Buffer {
       pins--;
    }
 
+   /**
+    * Returns the number of times the simpledb.buffer has been pinned
+    * since its creation, whatever the block.
+    * @return the total number of pins
+    */
+   long totalPins() {
+      return totalPins;
+   }
+
    /**
     * Returns true if the simpledb.buffer is currently pinned
     * (that is, if it has a nonzero pin count).
@@ -151,13 +302,28 @@ public class Buffer {
    }
 
    /**
-    * Returns true if the simpledb.buffer is dirty
-    * due to a modification by the specified transaction.
-    * @param txnum the id of the transaction
-    * @return true if the transaction modified the simpledb.buffer
+    * Returns true if the simpledb.buffer is dirty.
+    * @return true if the page has been modified since it was last written
+    */
+   boolean isModified() {
+      return modifiedBy >= 0;
+   }
+
+   /**
+    * Returns true if the simpledb.buffer has not been pinned
+    * since it was last marked as cold.
+    * The mark is used by the background writer.
+    * @return true if the simpledb.buffer is cold
+    */
+   boolean isCold() {
+      return cold;
+   }
+
+   /**
+    * Marks the simpledb.buffer as cold, until it is pinned again.
     */
-   boolean isModifiedBy(int txnum) {
-      return txnum == modifiedBy;
+   void markCold() {
+      cold = true;
    }
 
    /**
@@ -168,9 +334,32 @@ public class Buffer {
     * @param b a reference to the data block
     */
    void assignToBlock(Block b) {
+      assignToBlock(b, null, 0);
+   }
+
+   /**
+    * Assigns the simpledb.buffer to the specified block, whose contents
+    * have already been read into the specified page.
+    * The page is copied only if the block's simpledb.file has not been
+    * written since the read, as indicated by its write count;
+    * otherwise, the block is read again.
+    * If the simpledb.buffer was dirty, then the contents
+    * of the previous page are first written to disk;
+    * if they cannot be written, the simpledb.buffer keeps its block.
+    * If the block cannot be read, the simpledb.buffer
+    * is left assigned to no block.
+    * @param b a reference to the data block
+    * @param loaded the contents of the block, or null to read them
+    * @param writeCount the write count of the simpledb.file before the page was read
+    */
+   void assignToBlock(Block b, Page loaded, long writeCount) {
       flush();
+      blk = null;
+      if (loaded != null && SimpleDB.fileMgr().writeCount(b.fileName()) == writeCount)
+         contents.copyFrom(loaded);
+      else
+         contents.read(b);
       blk = b;
-      contents.read(blk);
       pins = 0;
    }
 
@@ -178,23 +367,71 @@ public class Buffer {
     * Initializes the simpledb.buffer's page according to the specified formatter,
     * and appends the page to the specified simpledb.file.
     * If the simpledb.buffer was dirty, then the contents
-    * of the previous page are first written to disk.
+    * of the previous page are first written to disk;
+    * if they cannot be written, the simpledb.buffer keeps its block.
+    * If the page cannot be appended, the simpledb.buffer
+    * is left assigned to no block.
     * @param filename the name of the simpledb.file
     * @param fmtr a page formatter, used to initialize the page
     */
    void assignToNew(String filename, PageFormatter fmtr) {
       flush();
+      blk = null;
       fmtr.format(contents);
       blk = contents.append(filename);
       pins = 0;
    }
 
-   long getLatestUsage() {
-      return this.latestUsage;
+   /**
+    * Returns true if the simpledb.buffer has been pinned
+    * since its reference bit was last cleared.
+    * The bit is used by the clock replacement strategy.
+    * @return true if the reference bit is set
+    */
+   boolean isReferenced() {
+      return referenced;
+   }
+
+   /**
+    * Clears the reference bit, giving the simpledb.buffer
+    * its second chance.
+    */
+   void clearReferenced() {
+      referenced = false;
+   }
+
+   // Bookkeeping of the LRU and LRU-K replacement strategies
+
+   Buffer getLruPrev() {
+      return lruPrev;
+   }
+
+   void setLruPrev(Buffer lruPrev) {
+      this.lruPrev = lruPrev;
+   }
+
+   Buffer getLruNext() {
+      return lruNext;
+   }
+
+   void setLruNext(Buffer lruNext) {
+      this.lruNext = lruNext;
+   }
+
+   long getLastRef() {
+      return lastRef;
+   }
+
+   void setLastRef(long lastRef) {
+      this.lastRef = lastRef;
+   }
+
+   long getPenultimateRef() {
+      return penultimateRef;
    }
 
-   void setLatestUsage(long latestUsage) {
-      this.latestUsage = latestUsage;
+   void setPenultimateRef(long penultimateRef) {
+      this.penultimateRef = penultimateRef;
    }
 
 }
\ No newline at end of file
@@ -1,6 +1,14 @@
 package simpledb.buffer;
 
+import org.json.JSONException;
+import org.json.JSONObject;
 import simpledb.file.*;
+import simpledb.server.SimpleDB;
+import simpledb.stats.BasicBufferStats;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.*;
 
 /**
  * The publicly-accessible simpledb.buffer manager.
@@ -9,22 +17,47 @@ import simpledb.file.*;
  * the methods {@link #pin(Block) pin} and 
  * {@link #pinNew(String, PageFormatter) pinNew}
  * will never return null.
- * If no buffers are currently available, then the
- * calling thread will be placed on a waiting list.
- * The waiting threads are removed from the list when 
- * a simpledb.buffer becomes available.
+ * The buffers are split into partitions, each with its
+ * own latch, so that pins of blocks in different partitions
+ * do not contend with each other.
+ * If no buffers are currently available in the partition of a block,
+ * then the calling thread will be placed on the wait queue of that partition.
+ * The waiting threads are served in arrival order, each
+ * receiving a simpledb.buffer of the partition as soon as it becomes available.
  * If a thread has been waiting for a simpledb.buffer for an
- * excessive amount of time (currently, 10 seconds)
+ * excessive amount of time (by default, 10 seconds; see
+ * {@link simpledb.server.SimpleDB#BUFFER_TIMEOUT})
  * then a {@link BufferAbortException} is thrown.
+ * The statistics of the pool and of each simpledb.file are kept in
+ * lock-free counters, and can be read through JMX.
  * @author Edward Sciore
  */
-public class BufferMgr {
-   private static final long MAX_TIME = 10000; // 10 seconds
-   private BasicBufferMgr bufferMgr;
+public class BufferMgr implements BufferMgrMXBean {
+   /**
+    * The name under which the current simpledb.buffer manager
+    * is registered with the platform MBean server.
+    */
+   public static final String MBEAN_NAME = "simpledb:type=BufferMgr";
+   private static final int MIN_PARTITION_SIZE = 64;
+   private static final int MAX_RUN = 64;
+   private static final Comparator<Block> BLOCK_ORDER =
+         Comparator.comparing(Block::fileName).thenComparingInt(Block::number);
+   private BasicBufferMgr[] partitions;
+   private Map<String,Object> appendLatches = new ConcurrentHashMap<String,Object>();
+   private Prefetcher prefetcher;
+   private BufferWriter writer;
+   private String strategy = SimpleDB.STRATEGY;
+   private int poolSize;
+   private BasicBufferStats stats = new BasicBufferStats();
+   private Map<String,BasicBufferStats> fileStats = new ConcurrentHashMap<String,BasicBufferStats>();
+   private ThreadLocal<Page[]> scratchPages = ThreadLocal.withInitial(() -> new Page[0]);
    
    /**
     * Creates a new simpledb.buffer manager having the specified
     * number of buffers.
+    * The buffers are split into one partition per processor,
+    * as long as each partition gets at least
+    * MIN_PARTITION_SIZE buffers.
     * This constructor depends on both the {@link FileMgr} and
     * {@link simpledb.log.LogMgr LogMgr} objects 
     * that it gets from the class
@@ -36,7 +69,34 @@ public class BufferMgr {
     * @param numbuffers the number of simpledb.buffer slots to allocate
     */
    public BufferMgr(int numbuffers) {
-      bufferMgr = new BasicBufferMgr(numbuffers);
+      this(numbuffers, defaultPartitions(numbuffers));
+   }
+   
+   /**
+    * Creates a new simpledb.buffer manager having the specified
+    * number of buffers, split into the specified number of partitions.
+    * Each block is always cached in the partition its
+    * hash code maps to, and each partition has its own
+    * latch, replacement state and wait list.
+    * @param numbuffers the number of simpledb.buffer slots to allocate
+    * @param numpartitions the number of partitions
+    */
+   public BufferMgr(int numbuffers, int numpartitions) {
+      numpartitions = Math.max(1, Math.min(numpartitions, numbuffers));
+      poolSize = numbuffers;
+      partitions = new BasicBufferMgr[numpartitions];
+      for (int i=0; i<numpartitions; i++) {
+         int size = numbuffers / numpartitions;
+         if (i < numbuffers % numpartitions)
+            size++;
+         partitions[i] = new BasicBufferMgr(size, this);
+      }
+      prefetcher = new Prefetcher(this, SimpleDB.PREFETCH_DEPTH);
+      if (SimpleDB.WRITER_DELAY > 0) {
+         writer = new BufferWriter(this, SimpleDB.WRITER_DELAY);
+         writer.start();
+      }
+      registerMBean();
    }
    
    /**
@@ -44,70 +104,221 @@ public class BufferMgr {
     * waiting until a simpledb.buffer becomes available.
     * If no simpledb.buffer becomes available within a fixed
     * time period, then a {@link BufferAbortException} is thrown.
+    * Only the threads waiting on the block's partition
+    * are blocked.
+    * @param blk a reference to a disk block
+    * @return the simpledb.buffer pinned to that block
+    */
+   public Buffer pin(Block blk) {
+      return pin(blk, null);
+   }
+   
+   /**
+    * Pins a simpledb.buffer to the specified block on behalf of
+    * a sequential scan, potentially waiting until a
+    * simpledb.buffer becomes available.
+    * If the block is not in the pool, it is read into
+    * one of the buffers of the scan's ring when possible,
+    * so that the scan does not evict other clients' pages.
+    * Pins without a ring are reported to the prefetcher,
+    * which reads ahead the blocks of sequential scans.
     * @param blk a reference to a disk block
+    * @param ring the scan's buffer ring, or null for none
     * @return the simpledb.buffer pinned to that block
     */
-   public synchronized Buffer pin(Block blk) {
+   public Buffer pin(Block blk, BufferRing ring) {
+      Buffer buff = partitionFor(blk).pin(blk, ring, SimpleDB.BUFFER_TIMEOUT);
+      if (ring == null)
+         prefetcher.accessed(blk);
+      return buff;
+   }
+   
+   /**
+    * Pins buffers to the specified consecutive blocks
+    * of a simpledb.file on behalf of a scan, potentially waiting
+    * until buffers become available.
+    * The blocks that are not in the pool are read with
+    * a single disk read, and then assigned to buffers
+    * (of the scan's ring, when possible) as in {@link #pin(Block, BufferRing)}.
+    * @param filename the name of the simpledb.file
+    * @param blknum the number of the first block
+    * @param count the number of blocks
+    * @param ring the scan's buffer ring, or null for none
+    * @return the buffers pinned to the blocks, in block order
+    */
+   public Buffer[] pinRange(String filename, int blknum, int count, BufferRing ring) {
+      long writeCount = SimpleDB.fileMgr().writeCount(filename);
+      Page[] loaded = readMissing(filename, blknum, count);
+      Buffer[] buffs = new Buffer[count];
+      int pinned = 0;
       try {
-         long timestamp = System.currentTimeMillis();
-         Buffer buff = bufferMgr.pin(blk);
-         while (buff == null && !waitingTooLong(timestamp)) {
-            wait(MAX_TIME);
-            buff = bufferMgr.pin(blk);
+         for (; pinned < count; pinned++) {
+            Block blk = new Block(filename, blknum + pinned);
+            buffs[pinned] = partitionFor(blk).pin(blk, ring, loaded[pinned], writeCount, SimpleDB.BUFFER_TIMEOUT);
          }
-         if (buff == null)
-            throw new BufferAbortException();
-         return buff;
+         return buffs;
       }
-      catch(InterruptedException e) {
-         throw new BufferAbortException();
+      catch (RuntimeException e) {
+         for (int i=0; i<pinned; i++)
+            unpin(buffs[i]);
+         throw e;
       }
    }
    
+   /**
+    * Reads the specified blocks that are not in the pool
+    * with a single disk read, into pages private to the
+    * calling thread.
+    * The returned array has an element for each block,
+    * which is null if the block was in the pool;
+    * a single missing block is not read.
+    * The pages are only valid until the next call from the same thread.
+    */
+   private Page[] readMissing(String filename, int blknum, int count) {
+      Page[] loaded = new Page[count];
+      int first = -1, last = -1;
+      for (int i=0; i<count; i++) {
+         Block blk = new Block(filename, blknum + i);
+         if (!partitionFor(blk).contains(blk)) {
+            if (first < 0)
+               first = i;
+            last = i;
+         }
+      }
+      if (first == last)
+         return loaded;
+      int n = last - first + 1;
+      Page[] pages = scratchPages.get();
+      if (pages.length < n) {
+         Page[] grown = Arrays.copyOf(pages, n);
+         for (int i=pages.length; i<n; i++)
+            grown[i] = new Page();
+         scratchPages.set(grown);
+         pages = grown;
+      }
+      Page.readRange(new Block(filename, blknum + first), Arrays.copyOf(pages, n));
+      for (int i=first; i<=last; i++) {
+         Block blk = new Block(filename, blknum + i);
+         if (!partitionFor(blk).contains(blk))
+            loaded[i] = pages[i - first];
+      }
+      return loaded;
+   }
+   
    /**
     * Pins a simpledb.buffer to a new block in the specified simpledb.file,
     * potentially waiting until a simpledb.buffer becomes available.
     * If no simpledb.buffer becomes available within a fixed
     * time period, then a {@link BufferAbortException} is thrown.
+    * The new block is cached in the partition of the block
+    * that will be appended; appends to the same simpledb.file are
+    * serialized so that this block number cannot change
+    * in the meantime.
     * @param filename the name of the simpledb.file
     * @param fmtr the formatter used to initialize the page
     * @return the simpledb.buffer pinned to that block
     */
-   public synchronized Buffer pinNew(String filename, PageFormatter fmtr) {
-      try {
-         long timestamp = System.currentTimeMillis();
-         Buffer buff = bufferMgr.pinNew(filename, fmtr);
-         while (buff == null && !waitingTooLong(timestamp)) {
-            wait(MAX_TIME);
-            buff = bufferMgr.pinNew(filename, fmtr);
-         }
-         if (buff == null)
-            throw new BufferAbortException();
-         return buff;
-      }
-      catch(InterruptedException e) {
-         throw new BufferAbortException();
+   public Buffer pinNew(String filename, PageFormatter fmtr) {
+      Object appendLatch = appendLatches.computeIfAbsent(filename, f -> new Object());
+      synchronized (appendLatch) {
+         Block newblk = new Block(filename, SimpleDB.fileMgr().size(filename));
+         return partitionFor(newblk).pinNew(filename, fmtr, SimpleDB.BUFFER_TIMEOUT);
       }
    }
    
    /**
     * Unpins the specified simpledb.buffer.
     * If the simpledb.buffer's pin count becomes 0,
-    * then the threads on the wait list are notified.
+    * then it is handed to the oldest thread on the wait queue
+    * of its partition, if any.
     * @param buff the simpledb.buffer to be unpinned
     */
-   public synchronized void unpin(Buffer buff) {
-      bufferMgr.unpin(buff);
-      if (!buff.isPinned())
-         notifyAll();
+   public void unpin(Buffer buff) {
+      partitionFor(buff.block()).unpin(buff);
+   }
+   
+   /**
+    * Reads the specified blocks into unpinned buffers
+    * of their partitions, without pinning them.
+    * The blocks that are not in the pool are read with
+    * a single disk read.
+    * Called by the prefetcher's background thread.
+    * @param filename the name of the simpledb.file
+    * @param blknum the number of the first block
+    * @param count the number of blocks
+    * @param reserve the number of available buffers each partition must keep
+    */
+   void prefetch(String filename, int blknum, int count, int reserve) {
+      long writeCount = SimpleDB.fileMgr().writeCount(filename);
+      Page[] loaded = readMissing(filename, blknum, count);
+      for (int i=0; i<count; i++) {
+         Block blk = new Block(filename, blknum + i);
+         partitionFor(blk).prefetch(blk, reserve, loaded[i], writeCount);
+      }
+   }
+   
+   /**
+    * Flushes all the dirty buffers, and forces the data files to disk.
+    * Called when a checkpoint is written, so that
+    * no modification precedes the checkpoint only in memory.
+    * Since transactions keep running during a checkpoint,
+    * the method first waits for the modifications in progress,
+    * whose simpledb.log records may already precede the checkpoint.
+    * The buffers are pinned while they are written, so that
+    * no partition is latched during the writes, and buffers
+    * assigned to consecutive blocks of a simpledb.file are written
+    * with a single disk write.
+    */
+   public void flushAll() {
+      for (BasicBufferMgr partition : partitions)
+         partition.awaitModifications();
+      List<Buffer> buffs = new ArrayList<Buffer>();
+      for (BasicBufferMgr partition : partitions)
+         partition.pinModified(buffs);
+      Collections.sort(buffs, (b1, b2) -> BLOCK_ORDER.compare(b1.block(), b2.block()));
+      try {
+         List<Buffer> run = new ArrayList<Buffer>();
+         for (Buffer buff : buffs) {
+            if (!run.isEmpty() && !continuesRun(run, buff)) {
+               writeRun(run);
+               run.clear();
+            }
+            run.add(buff);
+         }
+         if (!run.isEmpty())
+            writeRun(run);
+      }
+      finally {
+         for (Buffer buff : buffs)
+            unpin(buff);
+      }
+      SimpleDB.fileMgr().forceAll();
+   }
+   
+   /**
+    * Writes the dirty buffers that have not been pinned
+    * since the previous call, in block order.
+    * Each partition is latched only while collecting
+    * its blocks and while pinning one of them, so
+    * the clients' pins are not delayed by the writes.
+    * Called by the background writer.
+    */
+   void writeColdBuffers() {
+      List<Block> blocks = new ArrayList<Block>();
+      for (BasicBufferMgr partition : partitions)
+         partition.collectColdBlocks(blocks);
+      Collections.sort(blocks, BLOCK_ORDER);
+      for (Block blk : blocks)
+         partitionFor(blk).writeIfCold(blk);
    }
    
    /**
-    * Flushes the dirty buffers modified by the specified transaction.
-    * @param txnum the transaction's id number
+    * Stops the background writer.
+    * The dirty buffers are not flushed.
     */
-   public void flushAll(int txnum) {
-      bufferMgr.flushAll(txnum);
+   public void shutdown() {
+      if (writer != null)
+         writer.shutdown();
    }
    
    /**
@@ -115,10 +326,126 @@ public class BufferMgr {
     * @return the number of available buffers
     */
    public int available() {
-      return bufferMgr.available();
+      int numAvailable = 0;
+      for (BasicBufferMgr partition : partitions)
+         numAvailable += partition.available();
+      return numAvailable;
+   }
+   
+   public int getAvailable() {
+      return available();
+   }
+   
+   public String getStrategy() {
+      return strategy;
+   }
+   
+   public int getPoolSize() {
+      return poolSize;
+   }
+   
+   /**
+    * Returns the counters of the whole pool.
+    * @return the statistics of the buffer pool
+    */
+   public BasicBufferStats getStats() {
+      return stats;
+   }
+   
+   /**
+    * Returns the counters of each simpledb.file that has been
+    * accessed through the pool.
+    * Evictions and write-backs are counted on the simpledb.file
+    * of the page that leaves the pool or is written.
+    * @return the statistics of each simpledb.file, keyed by filename
+    */
+   public Map<String,BasicBufferStats> getFileStats() {
+      return Collections.unmodifiableMap(fileStats);
+   }
+   
+   public long[] getPinCounts() {
+      long[] counts = new long[poolSize];
+      int i = 0;
+      for (BasicBufferMgr partition : partitions)
+         for (long count : partition.pinCounts())
+            counts[i++] = count;
+      return counts;
+   }
+   
+   /**
+    * Returns the counters of the specified simpledb.file,
+    * creating them if needed.
+    * Updates to the counters of a simpledb.file are also
+    * counted in those of the pool.
+    * @param filename the name of the simpledb.file
+    * @return the statistics of the simpledb.file
+    */
+   BasicBufferStats statsFor(String filename) {
+      BasicBufferStats s = fileStats.get(filename);
+      if (s == null)
+         s = fileStats.computeIfAbsent(filename, f -> new BasicBufferStats(stats));
+      return s;
+   }
+   
+   public static JSONObject getBufferStat(BasicBufferStats stats) throws JSONException {
+      JSONObject bufferStat = new JSONObject();
+      bufferStat.put("pins", stats.getPins());
+      bufferStat.put("hits", stats.getHits());
+      bufferStat.put("misses", stats.getMisses());
+      bufferStat.put("hitRatio", stats.getHitRatio());
+      bufferStat.put("evictions", stats.getEvictions());
+      bufferStat.put("writeBacks", stats.getWriteBacks());
+      bufferStat.put("dirtyEvictions", stats.getDirtyEvictions());
+      bufferStat.put("backgroundWrites", stats.getBackgroundWrites());
+      bufferStat.put("logFlushes", stats.getLogFlushes());
+      bufferStat.put("prefetches", stats.getPrefetches());
+      bufferStat.put("waits", stats.getWaits());
+      bufferStat.put("waitTime", stats.getWaitTime());
+      bufferStat.put("aborts", stats.getAborts());
+      return bufferStat;
+   }
+   
+   public static JSONObject getBufferStats() throws JSONException {
+      BufferMgr bm = SimpleDB.bufferMgr();
+      JSONObject bufferStat = getBufferStat(bm.getStats());
+      bufferStat.put("strategy", bm.getStrategy());
+      bufferStat.put("poolSize", bm.getPoolSize());
+      return bufferStat;
+   }
+   
+   private void writeRun(List<Buffer> run) {
+      Buffer.flush(run);
+      for (Buffer buff : run)
+         statsFor(buff.block().fileName()).incrementWriteBacks();
+   }
+   
+   private void registerMBean() {
+      try {
+         MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+         ObjectName name = new ObjectName(MBEAN_NAME);
+         if (server.isRegistered(name))
+            server.unregisterMBean(name);
+         server.registerMBean(this, name);
+      }
+      catch (JMException e) {
+         throw new RuntimeException("cannot register the simpledb.buffer manager as " + MBEAN_NAME, e);
+      }
+   }
+   
+   private boolean continuesRun(List<Buffer> run, Buffer buff) {
+      Block last = run.get(run.size() - 1).block();
+      return run.size() < MAX_RUN
+            && buff.block().fileName().equals(last.fileName())
+            && buff.block().number() == last.number() + 1;
+   }
+   
+   private BasicBufferMgr partitionFor(Block blk) {
+      int h = blk.hashCode() & Integer.MAX_VALUE;
+      return partitions[h % partitions.length];
    }
    
-   private boolean waitingTooLong(long starttime) {
-      return System.currentTimeMillis() - starttime > MAX_TIME;
+   private static int defaultPartitions(int numbuffers) {
+      int cpus = Runtime.getRuntime().availableProcessors();
+      return Math.max(1, Math.min(cpus, numbuffers / MIN_PARTITION_SIZE));
    }
 }
@@ -0,0 +1,48 @@
+package simpledb.buffer;
+
+import simpledb.stats.BasicBufferStats;
+import java.util.Map;
+
+/**
+ * The management interface of the simpledb.buffer manager,
+ * through which its statistics can be read with JMX.
+ * The simpledb.buffer manager is registered with the platform
+ * MBean server under the name {@value BufferMgr#MBEAN_NAME}.
+ */
+public interface BufferMgrMXBean {
+   /**
+    * Returns the name of the replacement strategy of the pool.
+    * @return the name of the strategy
+    */
+   String getStrategy();
+
+   /**
+    * Returns the number of buffers in the pool.
+    * @return the size of the pool
+    */
+   int getPoolSize();
+
+   /**
+    * Returns the number of available (ie unpinned) buffers.
+    * @return the number of available buffers
+    */
+   int getAvailable();
+
+   /**
+    * Returns the counters of the whole pool.
+    * @return the statistics of the pool
+    */
+   BasicBufferStats getStats();
+
+   /**
+    * Returns the counters of each simpledb.file, keyed by filename.
+    * @return the statistics of each simpledb.file
+    */
+   Map<String,BasicBufferStats> getFileStats();
+
+   /**
+    * Returns the number of times each simpledb.buffer has been pinned.
+    * @return the pin counts, one per simpledb.buffer
+    */
+   long[] getPinCounts();
+}
@@ -0,0 +1,86 @@
+package simpledb.buffer;
+
+import simpledb.file.Block;
+
+/**
+ * A small private set of buffers used by a sequential scan.
+ * When a scan that owns a ring misses in the buffer pool,
+ * it replaces one of the buffers it loaded earlier,
+ * instead of a buffer chosen by the pool's replacement strategy.
+ * A large scan therefore recycles its own few buffers,
+ * and leaves the pages cached by other clients alone.
+ * A ring belongs to a single scan, and so is not thread-safe.
+ */
+public class BufferRing {
+   /**
+    * The number of buffers in a ring, if not specified otherwise.
+    */
+   public static final int DEFAULT_SIZE = 16;
+   
+   private Buffer[] buffers;
+   private Block[] blocks;
+   private BasicBufferMgr[] partitions;
+   private int next = 0;
+   
+   /**
+    * Creates a ring of the default size.
+    */
+   public BufferRing() {
+      this(DEFAULT_SIZE);
+   }
+   
+   /**
+    * Creates a ring that recycles at most
+    * the specified number of buffers.
+    * A scan that keeps k blocks pinned at a time
+    * needs a ring of more than k buffers.
+    * @param size the number of buffers in the ring
+    */
+   public BufferRing(int size) {
+      buffers    = new Buffer[size];
+      blocks     = new Block[size];
+      partitions = new BasicBufferMgr[size];
+   }
+   
+   /**
+    * Returns a buffer of the ring that can be replaced
+    * in the specified partition.
+    * The buffer must be unpinned, and must still hold
+    * the block that the ring loaded into it;
+    * a buffer that the pool has since reassigned
+    * no longer belongs to the ring.
+    * This method is called while holding the partition's latch.
+    * @param partition the partition that needs a buffer
+    * @return a replaceable buffer of the ring, or null
+    */
+   Buffer reusableBuffer(BasicBufferMgr partition) {
+      for (int i=0; i<buffers.length; i++) {
+         Buffer buff = buffers[i];
+         if (partitions[i] == partition && !buff.isPinned()
+               && blocks[i].equals(buff.block()))
+            return buff;
+      }
+      return null;
+   }
+   
+   /**
+    * Records that the ring loaded the specified block
+    * into the specified buffer.
+    * If the buffer is not already in the ring, it takes
+    * the place of the oldest buffer of the ring,
+    * which goes back to the pool's replacement strategy.
+    * @param partition the partition of the buffer
+    * @param buff the buffer that was loaded
+    */
+   void loaded(BasicBufferMgr partition, Buffer buff) {
+      for (int i=0; i<buffers.length; i++)
+         if (buffers[i] == buff) {
+            blocks[i] = buff.block();
+            return;
+         }
+      buffers[next]    = buff;
+      blocks[next]     = buff.block();
+      partitions[next] = partition;
+      next = (next + 1) % buffers.length;
+   }
+}
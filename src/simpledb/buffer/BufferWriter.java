@@ -0,0 +1,79 @@
+package simpledb.buffer;
+
+/**
+ * The background writer of the simpledb.buffer pool.
+ * The thread periodically writes to disk the dirty buffers
+ * that have not been pinned since its previous pass,
+ * so that a client choosing a replacement simpledb.buffer
+ * rarely has to write its old contents first.
+ * The writes are done in block order, and each of them
+ * follows the write-ahead rule, as for any other flush.
+ */
+class BufferWriter extends Thread {
+   private BufferMgr bufferMgr;
+   private long delay;
+   private boolean stopped = false;
+
+   /**
+    * Creates a writer for the specified simpledb.buffer manager.
+    * @param bufferMgr the simpledb.buffer manager whose buffers are written
+    * @param delay the time between two passes, in milliseconds
+    */
+   BufferWriter(BufferMgr bufferMgr, long delay) {
+      super("simpledb-writer");
+      this.bufferMgr = bufferMgr;
+      this.delay = delay;
+      setDaemon(true);
+   }
+
+   /**
+    * Writes the cold dirty buffers every few milliseconds,
+    * until the writer is shut down.
+    */
+   public void run() {
+      while (waitForNextPass()) {
+         try {
+            bufferMgr.writeColdBuffers();
+         }
+         catch (RuntimeException e) {
+            // the simpledb.buffer stays dirty, and is written by the next flush
+         }
+      }
+   }
+
+   /**
+    * Stops the writer, waiting for the end of its current pass.
+    * The thread is not interrupted, since an interrupt would
+    * close the simpledb.file channel it is writing to.
+    * An interrupt of the calling thread does not end the wait,
+    * but is restored once the writer has stopped.
+    */
+   void shutdown() {
+      synchronized (this) {
+         stopped = true;
+         notifyAll();
+      }
+      boolean interrupted = false;
+      while (isAlive()) {
+         try {
+            join();
+         }
+         catch (InterruptedException e) {
+            interrupted = true;
+         }
+      }
+      if (interrupted)
+         Thread.currentThread().interrupt();
+   }
+
+   private synchronized boolean waitForNextPass() {
+      try {
+         if (!stopped)
+            wait(delay);
+      }
+      catch (InterruptedException e) {
+         stopped = true;
+      }
+      return !stopped;
+   }
+}
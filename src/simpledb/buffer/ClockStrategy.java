@@ -0,0 +1,51 @@
+package simpledb.buffer;
+
+/**
+ * The second-chance clock replacement strategy.
+ * Each pin sets the buffer's reference bit
+ * (see {@link Buffer#pin()}); the clock hand
+ * clears the bits as it sweeps the pool.
+ */
+class ClockStrategy implements ReplacementStrategy {
+   private Buffer[] bufferpool;
+   private int clockHand = 0;
+   
+   /**
+    * Creates the strategy for the specified buffers.
+    * @param bufferpool the buffers of the partition
+    */
+   ClockStrategy(Buffer[] bufferpool) {
+      this.bufferpool = bufferpool;
+   }
+   
+   /**
+    * Chooses a victim with the second-chance clock algorithm.
+    * The hand sweeps the pool starting where it last stopped.
+    * An unpinned buffer whose reference bit is set gets a
+    * second chance: the bit is cleared and the hand moves on.
+    * The first unpinned buffer found with a clear bit is chosen.
+    * Two full sweeps are enough to clear every bit, so
+    * if none is found by then, all the buffers are pinned.
+    * @see simpledb.buffer.ReplacementStrategy#chooseUnpinnedBuffer()
+    */
+   public Buffer chooseUnpinnedBuffer() {
+      int length = bufferpool.length;
+      for (int i = 0; i < 2 * length; i++) {
+         Buffer buff = bufferpool[clockHand];
+         clockHand = (clockHand + 1) % length;
+         if (buff.isPinned())
+            continue;
+         if (buff.isReferenced())
+            buff.clearReferenced();
+         else
+            return buff;
+      }
+      return null;
+   }
+   
+   public void assigned(Buffer buff) {}
+   
+   public void pinned(Buffer buff) {}
+   
+   public void unpinned(Buffer buff) {}
+}
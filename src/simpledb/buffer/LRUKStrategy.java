@@ -0,0 +1,76 @@
+package simpledb.buffer;
+
+import java.util.*;
+
+/**
+ * The LRU-K replacement strategy, with K=2.
+ * The victim is the unpinned buffer whose second most recent
+ * reference is the oldest.
+ * A page referenced only once since it was read has no
+ * second reference, and so is replaced before any page
+ * referenced twice; a sequential scan, which touches each
+ * page once, therefore cannot flood the pool.
+ * Ties are broken by the most recent reference, as in LRU.
+ * References are timestamped with a logical clock that
+ * counts the pins of the partition.
+ * The unpinned buffers are kept in a sorted set, so
+ * choosing a victim, pinning and unpinning
+ * take logarithmic time.
+ */
+class LRUKStrategy implements ReplacementStrategy {
+   private static final long NO_REFERENCE = Long.MIN_VALUE;
+   private long clock = 0;
+   private TreeSet<Buffer> unpinned = new TreeSet<Buffer>(new Comparator<Buffer>() {
+      public int compare(Buffer b1, Buffer b2) {
+         int result = Long.compare(b1.getPenultimateRef(), b2.getPenultimateRef());
+         if (result == 0)
+            result = Long.compare(b1.getLastRef(), b2.getLastRef());
+         return result;
+      }
+   });
+   
+   /**
+    * Creates the strategy for the specified buffers,
+    * which are all initially unpinned and unreferenced.
+    * Each buffer is given a distinct, negative
+    * last-reference time so that they can be ordered.
+    * @param bufferpool the buffers of the partition
+    */
+   LRUKStrategy(Buffer[] bufferpool) {
+      for (int i=0; i<bufferpool.length; i++) {
+         Buffer buff = bufferpool[i];
+         buff.setPenultimateRef(NO_REFERENCE);
+         buff.setLastRef(i - bufferpool.length);
+         unpinned.add(buff);
+      }
+   }
+   
+   public Buffer chooseUnpinnedBuffer() {
+      return unpinned.isEmpty() ? null : unpinned.first();
+   }
+   
+   /**
+    * Discards the reference history of the previous block.
+    * @see simpledb.buffer.ReplacementStrategy#assigned(simpledb.buffer.Buffer)
+    */
+   public void assigned(Buffer buff) {
+      unpinned.remove(buff);
+      buff.setPenultimateRef(NO_REFERENCE);
+      buff.setLastRef(NO_REFERENCE);
+   }
+   
+   /**
+    * Records a new reference to the buffer,
+    * and removes it from the set of unpinned buffers.
+    * @see simpledb.buffer.ReplacementStrategy#pinned(simpledb.buffer.Buffer)
+    */
+   public void pinned(Buffer buff) {
+      unpinned.remove(buff);
+      buff.setPenultimateRef(buff.getLastRef());
+      buff.setLastRef(++clock);
+   }
+   
+   public void unpinned(Buffer buff) {
+      unpinned.add(buff);
+   }
+}
@@ -0,0 +1,67 @@
+package simpledb.buffer;
+
+/**
+ * The least-recently-used replacement strategy.
+ * The unpinned buffers are kept in a doubly-linked list
+ * threaded through the buffers themselves,
+ * ordered by the time they were last unpinned.
+ * Choosing a victim, pinning and unpinning all take constant time.
+ */
+class LRUStrategy implements ReplacementStrategy {
+   private Buffer head = null;  // least recently used
+   private Buffer tail = null;  // most recently used
+   
+   /**
+    * Creates the strategy for the specified buffers,
+    * which are all initially unpinned.
+    * @param bufferpool the buffers of the partition
+    */
+   LRUStrategy(Buffer[] bufferpool) {
+      for (Buffer buff : bufferpool)
+         append(buff);
+   }
+   
+   public Buffer chooseUnpinnedBuffer() {
+      return head;
+   }
+   
+   public void assigned(Buffer buff) {}
+   
+   /**
+    * Removes the buffer from the list of unpinned buffers,
+    * if it is there.
+    * @see simpledb.buffer.ReplacementStrategy#pinned(simpledb.buffer.Buffer)
+    */
+   public void pinned(Buffer buff) {
+      if (buff.getLruPrev() == null && head != buff)
+         return;  // already pinned, so not in the list
+      if (buff.getLruPrev() != null)
+         buff.getLruPrev().setLruNext(buff.getLruNext());
+      else
+         head = buff.getLruNext();
+      if (buff.getLruNext() != null)
+         buff.getLruNext().setLruPrev(buff.getLruPrev());
+      else
+         tail = buff.getLruPrev();
+      buff.setLruPrev(null);
+      buff.setLruNext(null);
+   }
+   
+   /**
+    * Puts the buffer at the most-recently-used end of the list.
+    * @see simpledb.buffer.ReplacementStrategy#unpinned(simpledb.buffer.Buffer)
+    */
+   public void unpinned(Buffer buff) {
+      append(buff);
+   }
+   
+   private void append(Buffer buff) {
+      buff.setLruPrev(tail);
+      buff.setLruNext(null);
+      if (tail != null)
+         tail.setLruNext(buff);
+      else
+         head = buff;
+      tail = buff;
+   }
+}
@@ -0,0 +1,30 @@
+package simpledb.buffer;
+
+/**
+ * The naive replacement strategy, which chooses
+ * the first unpinned buffer of the pool.
+ */
+class NaifStrategy implements ReplacementStrategy {
+   private Buffer[] bufferpool;
+   
+   /**
+    * Creates the strategy for the specified buffers.
+    * @param bufferpool the buffers of the partition
+    */
+   NaifStrategy(Buffer[] bufferpool) {
+      this.bufferpool = bufferpool;
+   }
+   
+   public Buffer chooseUnpinnedBuffer() {
+      for (Buffer buff : bufferpool)
+         if (!buff.isPinned())
+            return buff;
+      return null;
+   }
+   
+   public void assigned(Buffer buff) {}
+   
+   public void pinned(Buffer buff) {}
+   
+   public void unpinned(Buffer buff) {}
+}
@@ -0,0 +1,111 @@
+package simpledb.buffer;
+
+import simpledb.file.Block;
+import simpledb.server.SimpleDB;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Reads blocks into the buffer pool ahead of demand.
+ * The prefetcher follows the blocks pinned in each simpledb.file:
+ * once a run of consecutive blocks is detected, the
+ * following blocks of the simpledb.file are read by a background
+ * thread into unpinned buffers, so that the disk is busy
+ * while the client is still working on the current block.
+ * Prefetching is only a hint: requests are dropped when
+ * the queue is full, and a block is not read if its partition
+ * is running short of available buffers.
+ */
+class Prefetcher {
+   private static final int MIN_RUN = 2;
+   private static final int QUEUE_SIZE = 64;
+   private BufferMgr bufferMgr;
+   private int depth;
+   private Map<String,Run> runs = new ConcurrentHashMap<String,Run>();
+   private ThreadPoolExecutor executor;
+
+   /**
+    * Creates a prefetcher that reads up to the specified
+    * number of blocks ahead of a sequential scan.
+    * The background thread is started on the first request,
+    * and terminates when it has been idle for a while.
+    * @param bufferMgr the simpledb.buffer manager to load the blocks into
+    * @param depth the number of blocks to read ahead, or 0 to disable prefetching
+    */
+   Prefetcher(BufferMgr bufferMgr, int depth) {
+      this.bufferMgr = bufferMgr;
+      this.depth = depth;
+      executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(QUEUE_SIZE),
+            r -> {
+               Thread t = new Thread(r, "simpledb-prefetcher");
+               t.setDaemon(true);
+               return t;
+            },
+            new ThreadPoolExecutor.DiscardPolicy());
+      executor.allowCoreThreadTimeOut(true);
+   }
+
+   /**
+    * Records that the specified block has been pinned.
+    * If the block continues a run of consecutive blocks
+    * of its simpledb.file, the blocks following it are requested,
+    * unless they have already been requested.
+    * @param blk a reference to the pinned block
+    */
+   void accessed(Block blk) {
+      if (depth == 0)
+         return;
+      Run run = runs.computeIfAbsent(blk.fileName(), f -> new Run());
+      int blknum = blk.number();
+      int start, end;
+      synchronized (run) {
+         if (blknum == run.last)
+            return;
+         if (blknum == run.last + 1)
+            run.length++;
+         else {
+            run.length = 1;
+            run.requested = blknum + 1;
+         }
+         run.last = blknum;
+         if (run.length < MIN_RUN || run.requested > blknum + depth / 2)
+            return;
+         start = Math.max(run.requested, blknum + 1);
+         end = blknum + depth;
+         run.requested = end + 1;
+      }
+      prefetch(blk.fileName(), start, end - start + 1);
+   }
+
+   /**
+    * Requests that the specified blocks be read
+    * into the buffer pool in the background.
+    * Blocks beyond the end of the simpledb.file are ignored.
+    * @param filename the name of the simpledb.file
+    * @param blknum the number of the first block
+    * @param count the number of blocks
+    */
+   private void prefetch(String filename, int blknum, int count) {
+      if (depth == 0 || count <= 0)
+         return;
+      executor.execute(() -> load(filename, blknum, count));
+   }
+
+   private void load(String filename, int blknum, int count) {
+      try {
+         int end = Math.min(blknum + count, SimpleDB.fileMgr().size(filename));
+         if (end > blknum)
+            bufferMgr.prefetch(filename, blknum, end - blknum, depth);
+      }
+      catch (RuntimeException e) {
+         // a failed read will be retried, and reported, by the client's pin
+      }
+   }
+
+   private static class Run {
+      int last = -1;
+      int length = 0;
+      int requested = 0;
+   }
+}
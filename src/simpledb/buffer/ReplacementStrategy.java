@@ -0,0 +1,42 @@
+package simpledb.buffer;
+
+/**
+ * The policy used by a buffer pool partition to choose
+ * which unpinned buffer to replace.
+ * The methods are called by {@link BasicBufferMgr}
+ * while it holds the partition's latch,
+ * so implementations need no synchronization of their own.
+ */
+interface ReplacementStrategy {
+   
+   /**
+    * Chooses an unpinned buffer to be replaced.
+    * The buffer is not removed from the strategy's
+    * bookkeeping until it is pinned.
+    * @return an unpinned buffer, or null if all buffers are pinned
+    */
+   Buffer chooseUnpinnedBuffer();
+   
+   /**
+    * Notifies the strategy that the buffer is about to be
+    * assigned to a different block, so that any
+    * reference history of the previous block is discarded.
+    * @param buff the buffer being reassigned
+    */
+   void assigned(Buffer buff);
+   
+   /**
+    * Notifies the strategy that the buffer has been pinned.
+    * This method is called on every pin, 
+    * including pins of buffers that were already pinned.
+    * @param buff the pinned buffer
+    */
+   void pinned(Buffer buff);
+   
+   /**
+    * Notifies the strategy that the buffer's pin count
+    * has dropped to zero.
+    * @param buff the unpinned buffer
+    */
+   void unpinned(Buffer buff);
+}
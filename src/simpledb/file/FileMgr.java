@@ -3,14 +3,19 @@ package simpledb.file;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import simpledb.buffer.BufferMgr;
 import simpledb.server.SimpleDB;
+import simpledb.stats.BasicBufferStats;
 import simpledb.stats.BasicFileStats;
 
 import static simpledb.server.SimpleDB.BLOCK_SIZE;
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The SimpleDB simpledb.file manager.
@@ -23,22 +28,87 @@ import java.util.*;
  * and are thus package-private.
  * The class also contains two public methods:
  * Method {@link #isNew() isNew} is called during system initialization by {@link simpledb.server.SimpleDB#init}.
+ * The database directory contains a header simpledb.file, which records
+ * the block size and the on-disk format version of the database;
+ * they are checked when the simpledb.file manager is created, so that a
+ * database is never opened with a block size different
+ * from the one it was created with, nor with a different
+ * page layout (since version 2, each block ends with
+ * a checksum; see {@link Page}).
  * Method {@link #size(String) size} is called by the simpledb.log manager and transaction manager to
- * determine the end of the simpledb.file.
+ * determine the end of the simpledb.file;
+ * the size of each open simpledb.file is kept in memory and
+ * maintained by {@link #append(String, ByteBuffer) append},
+ * so it does not cost a system call.
+ * This size is the logical end of the simpledb.file, which can be
+ * smaller than its physical size: files are grown in extents of
+ * {@link simpledb.server.SimpleDB#ALLOCATION_EXTENT} zeroed blocks,
+ * so that most appends are in-place writes that do not change
+ * the simpledb.file's metadata. When a simpledb.file is opened, its trailing
+ * zeroed blocks are not counted in its logical size.
+ * The simpledb.file manager is not globally synchronized:
+ * blocks are read and written with positional I/O, which
+ * can proceed concurrently, even on the same simpledb.file;
+ * only the appends (and gathering writes) to the same
+ * simpledb.file are serialized.
+ * Data files can optionally be memory-mapped,
+ * either all of them (see {@link simpledb.server.SimpleDB#MAPPED_IO})
+ * or one at a time (see {@link #setMapped(String, boolean) setMapped}).
+ * The blocks of a mapped simpledb.file are read from the mapping,
+ * which is made of extents of {@link #EXTENT_BLOCKS} blocks;
+ * an extent is mapped once the simpledb.file covers it entirely,
+ * so the mapping grows as appends extend the simpledb.file,
+ * and the last, partial extent is read with ordinary I/O.
+ * Writes always go through the simpledb.file channel, so they reach
+ * the disk in the same order, and with the same durability,
+ * as in the non-mapped mode; this keeps the write-ahead
+ * rule that {@link simpledb.buffer.Buffer} relies on.
+ * Files are not opened in synchronous mode: a write only
+ * reaches the operating system, and is made durable by
+ * {@link #force(String) force} or {@link #forceAll() forceAll},
+ * which sync each simpledb.file once for all the blocks
+ * written to it since its previous sync.
+ * The simpledb.log simpledb.file is forced whenever the simpledb.log is flushed,
+ * and the data files at checkpoints; a transaction that commits
+ * or rolls back forces only the data files it appended blocks to,
+ * since its other writes can be redone from the simpledb.log.
+ * Temporary files are never forced.
  * @author Edward Sciore
  */
 public class FileMgr {
+   /**
+    * The number of blocks in an extent of a mapped simpledb.file.
+    */
+   public static final int EXTENT_BLOCKS = 2048;
+   /**
+    * The name of the header simpledb.file of a database.
+    */
+   public static final String HEADER_FILE = "simpledb.header";
+   /**
+    * The version of the on-disk format written by this simpledb.file manager.
+    */
+   public static final int FORMAT_VERSION = 3;
+   /**
+    * The largest supported block size.
+    */
+   public static final int MAX_BLOCK_SIZE = 64 * 1024;
+   private static final int HEADER_MAGIC = 0x53444248;  // "SDBH"
    private File dbDirectory;
    private boolean isNew;
-   private Map<String,FileChannel> openFiles = new HashMap<String,FileChannel>();
-   private Map<String, BasicFileStats> blockStatsFile = new HashMap<String, BasicFileStats>();
+   private Map<String,Boolean> mappedFiles = new ConcurrentHashMap<String,Boolean>();
+   private Map<String,OpenFile> openFiles = new ConcurrentHashMap<String,OpenFile>();
+   private volatile Map<String, BasicFileStats> blockStatsFile = new ConcurrentHashMap<String, BasicFileStats>();
 
    private void updateReadBlockStats(Block blk, ByteBuffer bb) {
-      this.getMapStats().get(blk.fileName()).incrementBlockRead();
+      this.statsFor(blk.fileName()).incrementBlockRead();
    }
 
    private void updateWriteBlockStats(Block blk, ByteBuffer bb) {
-      this.getMapStats().get(blk.fileName()).incrementBlockWritten();
+      this.statsFor(blk.fileName()).incrementBlockWritten();
+   }
+
+   private BasicFileStats statsFor(String filename) {
+      return this.blockStatsFile.computeIfAbsent(filename, f -> new BasicFileStats());
    }
 
    public final Map<String,BasicFileStats> getMapStats() {
@@ -50,6 +120,12 @@ public class FileMgr {
       blockStat.put("fileName", fileName);
       blockStat.put("readBlocks", fileStats.getBlockRead());
       blockStat.put("writtenBlocks", fileStats.getBlockWritten());
+      blockStat.put("checksumsVerified", fileStats.getChecksumsVerified());
+      blockStat.put("checksumFailures", fileStats.getChecksumFailures());
+      BufferMgr bm = SimpleDB.bufferMgr();
+      BasicBufferStats bufferStats = (bm == null) ? null : bm.getFileStats().get(fileName);
+      if (bufferStats != null)
+         blockStat.put("bufferStats", BufferMgr.getBufferStat(bufferStats));
       return blockStat;
    }
 
@@ -61,14 +137,27 @@ public class FileMgr {
             try {
                blockStats.put(getBlockStat(fileName, fileStats));
             } catch (JSONException e) {
-            e.printStackTrace();
+               throw new RuntimeException("cannot report the statistics of " + fileName, e);
             }
          });
       return blockStats;
    }
 
+   /**
+    * Records the verification of the checksum of a block,
+    * which is done by {@link Page}.
+    * @param blk a reference to the disk block
+    * @param valid whether the checksum matched
+    */
+   void checksumVerified(Block blk, boolean valid) {
+      BasicFileStats stats = statsFor(blk.fileName());
+      stats.incrementChecksumsVerified();
+      if (!valid)
+         stats.incrementChecksumFailures();
+   }
+
    public final void resetMapStats() {
-      this.blockStatsFile = new HashMap<String, BasicFileStats>();
+      this.blockStatsFile = new ConcurrentHashMap<String, BasicFileStats>();
    }
 
    /**
@@ -78,9 +167,13 @@ public class FileMgr {
     * If the folder does not exist, then a folder containing
     * an empty database is created automatically.
     * Files for all temporary tables (i.e. tables beginning with "temp") are deleted.
+    * The header of a new database is written with the current block size;
+    * the header of an existing database must match it.
     * @param dbname the name of the directory that holds the database
     */
    public FileMgr(String dbname) {
+      if (BLOCK_SIZE <= 0 || BLOCK_SIZE > MAX_BLOCK_SIZE)
+         throw new RuntimeException("unsupported block size " + BLOCK_SIZE);
       String homedir = System.getProperty("user.home");
       dbDirectory = new File(homedir, dbname);
       isNew = !dbDirectory.exists();
@@ -91,8 +184,55 @@ public class FileMgr {
 
       // remove any leftover temporary tables
       for (String filename : dbDirectory.list())
-         if (filename.startsWith("temp"))
+         if (isTemp(filename))
          new File(dbDirectory, filename).delete();
+
+      checkHeader(dbname);
+   }
+
+   /**
+    * Checks the header of the database against the current
+    * block size and format version.
+    * A database created before the header was introduced
+    * has no checksums in its blocks, and is refused.
+    * @param dbname the name of the database
+    */
+   private void checkHeader(String dbname) {
+      File header = new File(dbDirectory, HEADER_FILE);
+      try {
+         if (!header.exists()) {
+            if (!isNew && dbDirectory.list().length > 0)
+               throw new RuntimeException("database " + dbname + " was created before page checksums; reload it");
+            writeHeader(header);
+            return;
+         }
+         try (DataInputStream in = new DataInputStream(new FileInputStream(header))) {
+            if (in.readInt() != HEADER_MAGIC)
+               throw new RuntimeException("invalid header in database " + dbname);
+            int version = in.readInt();
+            int blocksize = in.readInt();
+            if (version != FORMAT_VERSION)
+               throw new RuntimeException("database " + dbname + " has format version " + version
+                     + ", but the supported version is " + FORMAT_VERSION);
+            if (blocksize != BLOCK_SIZE)
+               throw new RuntimeException("database " + dbname + " has block size " + blocksize
+                     + ", but the block size is set to " + BLOCK_SIZE);
+         }
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot access the header of " + dbname);
+      }
+   }
+
+   private void writeHeader(File header) throws IOException {
+      try (FileOutputStream fos = new FileOutputStream(header);
+           DataOutputStream out = new DataOutputStream(fos)) {
+         out.writeInt(HEADER_MAGIC);
+         out.writeInt(FORMAT_VERSION);
+         out.writeInt(BLOCK_SIZE);
+         out.flush();
+         fos.getFD().sync();
+      }
    }
 
    /**
@@ -100,12 +240,62 @@ public class FileMgr {
     * @param blk a reference to a disk block
     * @param bb  the bytebuffer
     */
-   synchronized void read(Block blk, ByteBuffer bb) {
+   void read(Block blk, ByteBuffer bb) {
       try {
          bb.clear();
-         FileChannel fc = getFile(blk.fileName());
+         OpenFile f = getOpenFile(blk.fileName());
          this.updateReadBlockStats(blk, bb);
-         fc.read(bb, blk.number() * BLOCK_SIZE);
+         MappedByteBuffer extent = f.mapped ? f.extent(blk.number() / EXTENT_BLOCKS) : null;
+         if (extent != null) {
+            ByteBuffer src = extent.duplicate();
+            int pos = (blk.number() % EXTENT_BLOCKS) * BLOCK_SIZE;
+            src.limit(pos + BLOCK_SIZE).position(pos);
+            bb.put(src);
+            return;
+         }
+         FileChannel fc = f.channel;
+         long pos = (long) blk.number() * BLOCK_SIZE;
+         while (bb.hasRemaining() && fc.read(bb, pos + bb.position()) >= 0) {}
+         // the part of the block beyond the end of the simpledb.file reads as zeros
+         while (bb.hasRemaining())
+            bb.put((byte) 0);
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot read block " + blk);
+      }
+   }
+
+   /**
+    * Reads the contents of consecutive disk blocks,
+    * starting from the specified one, into several bytebuffers
+    * with a single scattering read.
+    * Since a scattering read uses the channel's position,
+    * it is serialized with the appends to the simpledb.file.
+    * The blocks of a mapped simpledb.file are copied from the mapping instead.
+    * @param blk a reference to the first disk block
+    * @param bbs the bytebuffers, one per block
+    */
+   void readRange(Block blk, ByteBuffer[] bbs) {
+      try {
+         OpenFile f = getOpenFile(blk.fileName());
+         if (f.mapped) {
+            for (int i=0; i<bbs.length; i++)
+               read(new Block(blk.fileName(), blk.number() + i), bbs[i]);
+            return;
+         }
+         for (ByteBuffer bb : bbs) {
+            bb.clear();
+            this.updateReadBlockStats(blk, bb);
+         }
+         ByteBuffer last = bbs[bbs.length - 1];
+         synchronized (f) {
+            f.channel.position((long) blk.number() * BLOCK_SIZE);
+            while (last.hasRemaining() && f.channel.read(bbs) >= 0) {}
+         }
+         // the blocks beyond the end of the simpledb.file read as zeros
+         for (ByteBuffer bb : bbs)
+            while (bb.hasRemaining())
+               bb.put((byte) 0);
       }
       catch (IOException e) {
          throw new RuntimeException("cannot read block " + blk);
@@ -114,15 +304,68 @@ public class FileMgr {
 
    /**
     * Writes the contents of a bytebuffer into a disk block.
+    * Writing a block beyond the end of the simpledb.file extends the simpledb.file;
+    * a block beyond its physical end is preallocated with its extent,
+    * as for {@link #append(String, ByteBuffer) append}.
     * @param blk a reference to a disk block
     * @param bb  the bytebuffer
     */
-   synchronized void write(Block blk, ByteBuffer bb) {
+   void write(Block blk, ByteBuffer bb) {
+      try {
+         OpenFile f = getOpenFile(blk.fileName());
+         if (blk.number() >= f.allocated) {
+            synchronized (f) {
+               if (blk.number() >= f.allocated)
+                  allocate(f, blk.number());
+            }
+         }
+         writeBlock(f, blk, bb);
+         if (blk.number() >= f.blocks)
+            extend(f, blk.number());
+         f.dirty = true;
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot write block" + blk);
+      }
+   }
+
+   private void writeBlock(OpenFile f, Block blk, ByteBuffer bb) throws IOException {
+      bb.rewind();
+      this.updateWriteBlockStats(blk, bb);
+      long pos = (long) blk.number() * BLOCK_SIZE;
+      while (bb.hasRemaining())
+         f.channel.write(bb, pos + bb.position());
+      f.writes.incrementAndGet();
+   }
+
+   /**
+    * Writes the contents of several bytebuffers into
+    * consecutive disk blocks, starting from the specified one,
+    * with a single gathering write.
+    * Since a gathering write uses the channel's position,
+    * it is serialized with the appends to the simpledb.file.
+    * @param blk a reference to the first disk block
+    * @param bbs the bytebuffers, one per block
+    */
+   void writeRange(Block blk, ByteBuffer[] bbs) {
       try {
-         bb.rewind();
-         FileChannel fc = getFile(blk.fileName());
-         this.updateWriteBlockStats(blk, bb);
-         fc.write(bb, blk.number() * BLOCK_SIZE);
+         OpenFile f = getOpenFile(blk.fileName());
+         long remaining = 0;
+         for (ByteBuffer bb : bbs) {
+            bb.rewind();
+            remaining += bb.remaining();
+            this.updateWriteBlockStats(blk, bb);
+         }
+         synchronized (f) {
+            f.channel.position((long) blk.number() * BLOCK_SIZE);
+            while (remaining > 0)
+               remaining -= f.channel.write(bbs);
+         }
+         f.writes.incrementAndGet();
+         int last = blk.number() + bbs.length - 1;
+         if (last >= f.blocks)
+            extend(f, last);
+         f.dirty = true;
       }
       catch (IOException e) {
          throw new RuntimeException("cannot write block" + blk);
@@ -132,15 +375,109 @@ public class FileMgr {
    /**
     * Appends the contents of a bytebuffer to the end
     * of the specified simpledb.file.
+    * Appends to the same simpledb.file are serialized,
+    * so that each of them gets its own block.
+    * The block is written in place if it has been preallocated;
+    * otherwise, a new extent is allocated first.
     * @param filename the name of the simpledb.file
     * @param bb  the bytebuffer
     * @return a reference to the newly-created block.
     */
-   synchronized Block append(String filename, ByteBuffer bb) {
-      int newblknum = size(filename);
-      Block blk = new Block(filename, newblknum);
-      write(blk, bb);
-      return blk;
+   Block append(String filename, ByteBuffer bb) {
+      try {
+         OpenFile f = getOpenFile(filename);
+         synchronized (f) {
+            int newblknum = f.blocks;
+            if (newblknum >= f.allocated)
+               allocate(f, newblknum);
+            Block blk = new Block(filename, newblknum);
+            writeBlock(f, blk, bb);
+            f.blocks = newblknum + 1;
+            f.fullExtents = f.blocks / EXTENT_BLOCKS;
+            f.dirty = true;
+            return blk;
+         }
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot access " + filename);
+      }
+   }
+
+   /**
+    * Grows the specified simpledb.file by an extent of zeroed blocks,
+    * starting from the specified block.
+    * Must be called while holding the simpledb.file's monitor.
+    */
+   private void allocate(OpenFile f, int blknum) throws IOException {
+      int extent = Math.max(1, SimpleDB.ALLOCATION_EXTENT);
+      ByteBuffer zeros = ByteBuffer.allocate(extent * BLOCK_SIZE);
+      long pos = (long) blknum * BLOCK_SIZE;
+      f.grown = true;
+      while (zeros.hasRemaining())
+         f.channel.write(zeros, pos + zeros.position());
+      f.allocated = blknum + extent;
+   }
+
+   /**
+    * Moves the logical end of the specified simpledb.file
+    * past the specified block, which has been written.
+    */
+   private void extend(OpenFile f, int blknum) {
+      synchronized (f) {
+         if (blknum >= f.allocated) {
+            f.grown = true;
+            f.allocated = blknum + 1;
+         }
+         if (blknum >= f.blocks) {
+            f.blocks = blknum + 1;
+            f.fullExtents = f.blocks / EXTENT_BLOCKS;
+         }
+      }
+   }
+
+   /**
+    * Forces the blocks written to the specified simpledb.file to disk.
+    * Nothing is done if the simpledb.file has not been written since
+    * its previous sync, or if it is a temporary simpledb.file.
+    * The simpledb.file's metadata is forced only if the simpledb.file has grown.
+    * @param filename the name of the simpledb.file
+    */
+   public void force(String filename) {
+      OpenFile f = openFiles.get(filename);
+      if (f != null && !isTemp(filename))
+         force(f, filename);
+   }
+
+   /**
+    * Forces to disk the blocks written to every
+    * open simpledb.file, except the temporary ones.
+    */
+   public void forceAll() {
+      openFiles.forEach((filename, f) -> {
+         if (!isTemp(filename))
+            force(f, filename);
+      });
+   }
+
+   private void force(OpenFile f, String filename) {
+      if (!f.dirty)
+         return;
+      // the flags are cleared before the sync, so that a concurrent
+      // write that is not covered by it leaves the simpledb.file dirty
+      boolean metadata = f.grown;
+      f.dirty = false;
+      f.grown = false;
+      try {
+         f.channel.force(metadata);
+      }
+      catch (IOException e) {
+         f.dirty = true;
+         throw new RuntimeException("cannot force " + filename);
+      }
+   }
+
+   private static boolean isTemp(String filename) {
+      return filename.startsWith("temp");
    }
 
    /**
@@ -148,16 +485,60 @@ public class FileMgr {
     * @param filename the name of the simpledb.file
     * @return the number of blocks in the simpledb.file
     */
-   public synchronized int size(String filename) {
+   public int size(String filename) {
       try {
-         FileChannel fc = getFile(filename);
-         return (int)(fc.size() / BLOCK_SIZE);
+         return getOpenFile(filename).blocks;
       }
       catch (IOException e) {
          throw new RuntimeException("cannot access " + filename);
       }
    }
 
+   /**
+    * Returns the number of writes to the specified simpledb.file
+    * since it was opened.
+    * A client that reads blocks outside the simpledb.buffer pool can
+    * compare the values returned before and after the read,
+    * to know whether the blocks may have been written meanwhile.
+    * @param filename the name of the simpledb.file
+    * @return the number of writes to the simpledb.file
+    */
+   public long writeCount(String filename) {
+      try {
+         return getOpenFile(filename).writes.get();
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot access " + filename);
+      }
+   }
+
+   /**
+    * Chooses whether the specified simpledb.file is memory-mapped,
+    * overriding the database-wide setting.
+    * The choice takes effect immediately, even if the simpledb.file is open.
+    * Temporary files and the simpledb.log simpledb.file are never mapped.
+    * @param filename the name of the simpledb.file
+    * @param mapped true if the blocks of the simpledb.file are to be read from a mapping
+    */
+   public void setMapped(String filename, boolean mapped) {
+      mappedFiles.put(filename, mapped);
+      OpenFile f = openFiles.get(filename);
+      if (f != null)
+         f.mapped = isMapped(filename);
+   }
+
+   /**
+    * Returns true if the blocks of the specified simpledb.file
+    * are read from a memory mapping.
+    * @param filename the name of the simpledb.file
+    * @return true if the simpledb.file is memory-mapped
+    */
+   public boolean isMapped(String filename) {
+      if (isTemp(filename) || filename.equals(SimpleDB.LOG_FILE))
+         return false;
+      return mappedFiles.getOrDefault(filename, SimpleDB.MAPPED_IO);
+   }
+
    /**
     * Returns a boolean indicating whether the simpledb.file manager
     * had to create a new database directory.
@@ -168,25 +549,112 @@ public class FileMgr {
    }
 
    /**
-    * Returns the simpledb.file channel for the specified filename.
-    * The simpledb.file channel is stored in a map keyed on the filename.
-    * If the simpledb.file is not open, then it is opened and the simpledb.file channel
-    * is added to the map.
+    * Returns the open simpledb.file for the specified filename.
+    * The open simpledb.file is stored in a concurrent map keyed on the filename.
+    * If the simpledb.file is not open, then it is opened and
+    * added to the map; concurrent callers get the same object.
     * @param filename the specified filename
-    * @return the simpledb.file channel associated with the open simpledb.file.
+    * @return the open simpledb.file
     * @throws IOException
     */
-   private FileChannel getFile(String filename) throws IOException {
-      FileChannel fc = openFiles.get(filename);
-      if (!this.blockStatsFile.containsKey(filename)) {
-         this.blockStatsFile.put(filename, new BasicFileStats());
+   private OpenFile getOpenFile(String filename) throws IOException {
+      OpenFile f = openFiles.get(filename);
+      if (f != null)
+         return f;
+      statsFor(filename);
+      try {
+         return openFiles.computeIfAbsent(filename, this::open);
+      }
+      catch (UncheckedIOException e) {
+         throw e.getCause();
       }
-      if (fc == null) {
+   }
+
+   private OpenFile open(String filename) {
+      try {
          File dbTable = new File(dbDirectory, filename);
-         RandomAccessFile f = new RandomAccessFile(dbTable, "rws");
-         fc = f.getChannel();
-         openFiles.put(filename, fc);
+         RandomAccessFile f = new RandomAccessFile(dbTable, "rw");
+         OpenFile of = new OpenFile(f.getChannel());
+         of.mapped = isMapped(filename);
+         of.allocated = (int)(of.channel.size() / BLOCK_SIZE);
+         of.blocks = logicalSize(of.channel, of.allocated);
+         of.fullExtents = of.blocks / EXTENT_BLOCKS;
+         return of;
+      }
+      catch (IOException e) {
+         throw new UncheckedIOException(e);
+      }
+   }
+
+   /**
+    * Returns the number of blocks of a simpledb.file
+    * that precede its trailing zeroed blocks.
+    * @param fc the simpledb.file channel
+    * @param allocated the number of blocks in the simpledb.file
+    * @return the logical size of the simpledb.file
+    * @throws IOException
+    */
+   private static int logicalSize(FileChannel fc, int allocated) throws IOException {
+      ByteBuffer bb = ByteBuffer.allocate(BLOCK_SIZE);
+      for (int blknum = allocated - 1; blknum >= 0; blknum--) {
+         bb.clear();
+         long pos = (long) blknum * BLOCK_SIZE;
+         while (bb.hasRemaining() && fc.read(bb, pos + bb.position()) >= 0) {}
+         for (int i = 0; i < bb.position(); i++)
+            if (bb.get(i) != 0)
+               return blknum + 1;
+      }
+      return 0;
+   }
+
+   /**
+    * An open simpledb.file.
+    * Its monitor serializes the operations that depend
+    * on the size or on the position of the channel,
+    * as well as the mapping of new extents.
+    * The logical number of blocks is only changed by appends,
+    * or by writes beyond the end of the simpledb.file.
+    */
+   private static class OpenFile {
+      final FileChannel channel;
+      volatile int blocks;
+      volatile int allocated;
+      final AtomicLong writes = new AtomicLong();
+      volatile boolean mapped;
+      volatile boolean dirty;
+      volatile boolean grown;
+      volatile int fullExtents;
+      volatile MappedByteBuffer[] extents = new MappedByteBuffer[0];
+
+      OpenFile(FileChannel channel) {
+         this.channel = channel;
+      }
+
+      /**
+       * Returns the mapping of the specified extent,
+       * mapping it if necessary, or null if the simpledb.file
+       * does not cover the whole extent yet.
+       * @param ext the number of the extent
+       * @return the mapping of the extent, or null
+       * @throws IOException
+       */
+      MappedByteBuffer extent(int ext) throws IOException {
+         MappedByteBuffer[] mapped = extents;
+         if (ext < mapped.length && mapped[ext] != null)
+            return mapped[ext];
+         if (ext >= fullExtents)
+            return null;
+         synchronized (this) {
+            mapped = extents;
+            if (ext < mapped.length && mapped[ext] != null)
+               return mapped[ext];
+            // copy on write, so that readers never see a partially built array
+            mapped = Arrays.copyOf(mapped, Math.max(mapped.length, ext + 1));
+            long extentSize = (long) EXTENT_BLOCKS * BLOCK_SIZE;
+            mapped[ext] = channel.map(FileChannel.MapMode.READ_ONLY, ext * extentSize, extentSize);
+            extents = mapped;
+            return mapped[ext];
+         }
       }
-      return fc;
    }
 }
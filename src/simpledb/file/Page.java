@@ -3,6 +3,8 @@ package simpledb.file;
 import simpledb.server.SimpleDB;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
 
 /**
  * The contents of a disk block in memory.
@@ -33,6 +35,19 @@ import java.nio.charset.Charset;
  * p3.read(blk);
  * String s = p3.getString(20);
  * </pre>
+ * The methods that get and set values use absolute offsets,
+ * and do not synchronize: clients that share a page must
+ * coordinate their accesses, as buffers do with their latch
+ * (see {@link simpledb.buffer.Buffer}).
+ * Only the methods that transfer the whole page
+ * to and from disk are synchronized.
+ * The last {@link #CHECKSUM_SIZE} bytes of a page hold a CRC32
+ * checksum of the rest of the page, which is stamped whenever the page
+ * is written to disk and, if {@link simpledb.server.SimpleDB#VERIFY_CHECKSUMS}
+ * is set, verified whenever it is read, so that a block that was only
+ * partially written (for example because of a crash) is detected
+ * before its contents are used.
+ * Clients can therefore use only the first {@link #capacity()} bytes of a page.
  * @author Edward Sciore
  */
 public class Page {
@@ -44,21 +59,46 @@ public class Page {
     */
    public static final int INT_SIZE = Integer.SIZE / Byte.SIZE;
    
+   /**
+    * The encoding of the strings stored in pages.
+    * The encoding is fixed, so that a database does not
+    * depend on the default charset of the JVM that wrote it.
+    */
+   public static final Charset CHARSET = StandardCharsets.UTF_8;
+   
+   private static final int BYTES_PER_CHAR = (int) CHARSET.newEncoder().maxBytesPerChar();
+   
    /**
     * The maximum size, in bytes, of a string of length n.
     * A string is represented as the encoding of its characters,
     * preceded by an integer denoting the number of bytes in this encoding.
-    * If the JVM uses the US-ASCII encoding, then each char
-    * is stored in one byte, so a string of n characters
-    * has a size of 4+n bytes.
+    * In UTF-8 each char is stored in at most three bytes
+    * (a surrogate pair takes four bytes for two chars),
+    * so a string of n characters has a size of at most 4+3n bytes.
     * @param n the size of the string
     * @return the maximum number of bytes required to store a string of size n
     */
    public static final int STR_SIZE(int n) {
-      float bytesPerChar = Charset.defaultCharset().newEncoder().maxBytesPerChar();
-      return INT_SIZE + (n * (int)bytesPerChar);
+      return INT_SIZE + (n * BYTES_PER_CHAR);
    }
    
+   /**
+    * The size of the checksum at the end of each page.
+    */
+   public static final int CHECKSUM_SIZE = INT_SIZE;
+   
+   /**
+    * The number of bytes of a page that are available to its clients,
+    * that is, the block size minus the checksum.
+    * @return the usable size of a page
+    */
+   public static final int capacity() {
+      return SimpleDB.BLOCK_SIZE - CHECKSUM_SIZE;
+   }
+   
+   private static final ThreadLocal<CRC32> crcs = ThreadLocal.withInitial(CRC32::new);
+   private static final ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[0]);
+   
    private ByteBuffer contents = ByteBuffer.allocateDirect(SimpleDB.BLOCK_SIZE);
    private FileMgr filemgr = SimpleDB.fileMgr();
    
@@ -82,6 +122,7 @@ public class Page {
     */
    public synchronized void read(Block blk) {
       filemgr.read(blk, contents);
+      verify(blk);
    }
    
    /**
@@ -89,18 +130,106 @@ public class Page {
     * @param blk a reference to a disk block
     */
    public synchronized void write(Block blk) {
+      seal();
       filemgr.write(blk, contents);
    }
    
+   /**
+    * Writes the contents of the specified pages to consecutive
+    * disk blocks, starting from the specified one, with a single
+    * disk write.
+    * The pages must not be modified during the write.
+    * @param blk a reference to the first disk block
+    * @param pages the pages to be written, in block order
+    */
+   public static void writeRange(Block blk, Page[] pages) {
+      ByteBuffer[] bbs = new ByteBuffer[pages.length];
+      for (int i=0; i<pages.length; i++) {
+         pages[i].seal();
+         bbs[i] = pages[i].contents.duplicate();
+      }
+      pages[0].filemgr.writeRange(blk, bbs);
+   }
+   
+   /**
+    * Populates the specified pages with the contents of
+    * consecutive disk blocks, starting from the specified one,
+    * with a single disk read.
+    * The pages must not be used by other threads during the read.
+    * @param blk a reference to the first disk block
+    * @param pages the pages to be populated, in block order
+    */
+   public static void readRange(Block blk, Page[] pages) {
+      ByteBuffer[] bbs = new ByteBuffer[pages.length];
+      for (int i=0; i<pages.length; i++)
+         bbs[i] = pages[i].contents.duplicate();
+      pages[0].filemgr.readRange(blk, bbs);
+      for (int i=0; i<pages.length; i++)
+         pages[i].verify(new Block(blk.fileName(), blk.number() + i));
+   }
+   
+   /**
+    * Replaces the contents of the page with
+    * those of the specified page.
+    * @param p the page to be copied
+    */
+   public synchronized void copyFrom(Page p) {
+      ByteBuffer src = p.contents.duplicate();
+      src.clear();
+      contents.clear();
+      contents.put(src);
+   }
+   
    /**
     * Appends the contents of the page to the specified simpledb.file.
     * @param filename the name of the simpledb.file
     * @return the reference to the newly-created disk block
     */
    public synchronized Block append(String filename) {
+      seal();
       return filemgr.append(filename, contents);
    }
    
+   /**
+    * Stores the checksum of the page in its last bytes.
+    */
+   private void seal() {
+      contents.putInt(capacity(), checksum());
+   }
+   
+   /**
+    * Checks the checksum of a page that has just been read
+    * from the specified block, if verification is enabled.
+    * A page of zeros is valid, since it is the content
+    * of a block that was allocated but never written.
+    * @param blk the block the page was read from
+    * @throws RuntimeException if the checksum does not match
+    */
+   private void verify(Block blk) {
+      if (!SimpleDB.VERIFY_CHECKSUMS)
+         return;
+      boolean valid = contents.getInt(capacity()) == checksum() || isZero();
+      filemgr.checksumVerified(blk, valid);
+      if (!valid)
+         throw new RuntimeException("checksum mismatch in block " + blk);
+   }
+   
+   private int checksum() {
+      CRC32 crc = crcs.get();
+      crc.reset();
+      ByteBuffer bb = contents.duplicate();
+      bb.limit(capacity()).position(0);
+      crc.update(bb);
+      return (int) crc.getValue();
+   }
+   
+   private boolean isZero() {
+      for (int i=0; i<SimpleDB.BLOCK_SIZE; i++)
+         if (contents.get(i) != 0)
+            return false;
+      return true;
+   }
+   
    /**
     * Returns the integer value at a specified offset of the page.
     * If an integer was not stored at that location, 
@@ -108,9 +237,8 @@ public class Page {
     * @param offset the byte offset within the page
     * @return the integer value at that offset
     */
-   public synchronized int getInt(int offset) {
-      contents.position(offset);
-      return contents.getInt();
+   public int getInt(int offset) {
+      return contents.getInt(offset);
    }
    
    /**
@@ -118,9 +246,31 @@ public class Page {
     * @param offset the byte offset within the page
     * @param val the integer to be written to the page
     */
-   public synchronized void setInt(int offset, int val) {
-      contents.position(offset);
-      contents.putInt(val);
+   public void setInt(int offset, int val) {
+      contents.putInt(offset, val);
+   }
+   
+   /**
+    * Returns a copy of the bytes at the specified offset of the page.
+    * @param offset the byte offset within the page
+    * @param n the number of bytes
+    * @return the bytes at that offset
+    */
+   public byte[] getBytes(int offset, int n) {
+      byte[] result = new byte[n];
+      for (int i=0; i<n; i++)
+         result[i] = contents.get(offset + i);
+      return result;
+   }
+   
+   /**
+    * Writes the specified bytes to the specified offset on the page.
+    * @param offset the byte offset within the page
+    * @param val the bytes to be written to the page
+    */
+   public void setBytes(int offset, byte[] val) {
+      for (int i=0; i<val.length; i++)
+         contents.put(offset + i, val[i]);
    }
    
    /**
@@ -130,12 +280,69 @@ public class Page {
     * @param offset the byte offset within the page
     * @return the string value at that offset
     */
-   public synchronized String getString(int offset) {
-      contents.position(offset);
-      int len = contents.getInt();
-      byte[] byteval = new byte[len];
-      contents.get(byteval);
-      return new String(byteval);
+   public String getString(int offset) {
+      int len = contents.getInt(offset);
+      byte[] byteval = scratch.get();
+      if (byteval.length < len) {
+         byteval = new byte[len];
+         scratch.set(byteval);
+      }
+      int pos = offset + INT_SIZE;
+      for (int i=0; i<len; i++)
+         byteval[i] = contents.get(pos + i);
+      return new String(byteval, 0, len, CHARSET);
+   }
+   
+   /**
+    * Compares the string at the specified offset of the page
+    * with the specified string, without decoding it into a new string.
+    * The result has the sign of {@link String#compareTo(String)
+    * storedString.compareTo(val)}.
+    * @param offset the byte offset within the page
+    * @param val the string to compare with
+    * @return a negative integer, zero, or a positive integer
+    * as the stored string is less than, equal to, or greater than val
+    */
+   public int compareString(int offset, String val) {
+      int pos = offset + INT_SIZE;
+      int end = pos + contents.getInt(offset);
+      int i = 0, n = val.length();
+      while (pos < end) {
+         // decode the next UTF-8 sequence into a code point
+         int b = contents.get(pos++) & 0xFF;
+         int cp;
+         if (b < 0x80)
+            cp = b;
+         else if (b < 0xE0)
+            cp = ((b & 0x1F) << 6) | (contents.get(pos++) & 0x3F);
+         else if (b < 0xF0) {
+            cp = ((b & 0x0F) << 12) | ((contents.get(pos) & 0x3F) << 6) | (contents.get(pos+1) & 0x3F);
+            pos += 2;
+         }
+         else {
+            cp = ((b & 0x07) << 18) | ((contents.get(pos) & 0x3F) << 12)
+               | ((contents.get(pos+1) & 0x3F) << 6) | (contents.get(pos+2) & 0x3F);
+            pos += 3;
+         }
+         // and compare its UTF-16 chars with those of val
+         if (cp < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            if (i == n)
+               return 1;
+            int diff = cp - val.charAt(i++);
+            if (diff != 0)
+               return diff;
+         }
+         else {
+            for (char c : Character.toChars(cp)) {
+               if (i == n)
+                  return 1;
+               int diff = c - val.charAt(i++);
+               if (diff != 0)
+                  return diff;
+            }
+         }
+      }
+      return i - n;
    }
    
    /**
@@ -143,10 +350,34 @@ public class Page {
     * @param offset the byte offset within the page
     * @param val the string to be written to the page
     */
-   public synchronized void setString(int offset, String val) {
-      contents.position(offset);
-      byte[] byteval = val.getBytes();
-      contents.putInt(byteval.length);
-      contents.put(byteval);
+   public void setString(int offset, String val) {
+      // encode the string in UTF-8 directly into the page,
+      // without creating a byte array
+      int pos = offset + INT_SIZE;
+      int n = val.length();
+      for (int i=0; i<n; i++) {
+         char c = val.charAt(i);
+         if (c < 0x80)
+            contents.put(pos++, (byte) c);
+         else if (c < 0x800) {
+            contents.put(pos++, (byte) (0xC0 | (c >> 6)));
+            contents.put(pos++, (byte) (0x80 | (c & 0x3F)));
+         }
+         else if (Character.isHighSurrogate(c) && i+1 < n && Character.isLowSurrogate(val.charAt(i+1))) {
+            int cp = Character.toCodePoint(c, val.charAt(++i));
+            contents.put(pos++, (byte) (0xF0 | (cp >> 18)));
+            contents.put(pos++, (byte) (0x80 | ((cp >> 12) & 0x3F)));
+            contents.put(pos++, (byte) (0x80 | ((cp >> 6) & 0x3F)));
+            contents.put(pos++, (byte) (0x80 | (cp & 0x3F)));
+         }
+         else if (Character.isSurrogate(c))
+            contents.put(pos++, (byte) '?');  // an unpaired surrogate, as String.getBytes does
+         else {
+            contents.put(pos++, (byte) (0xE0 | (c >> 12)));
+            contents.put(pos++, (byte) (0x80 | ((c >> 6) & 0x3F)));
+            contents.put(pos++, (byte) (0x80 | (c & 0x3F)));
+         }
+      }
+      contents.putInt(offset, pos - offset - INT_SIZE);
    }
 }
@@ -5,7 +5,6 @@ import static simpledb.file.Page.*;
 import simpledb.file.Block;
 import simpledb.record.*;
 import simpledb.query.*;
-import simpledb.server.SimpleDB;
 import simpledb.tx.Transaction;
 
 /**
@@ -44,7 +43,7 @@ public class BTreePage {
     */
    public int findSlotBefore(Constant searchkey) {
       int slot = 0;
-      while (slot < getNumRecs() && getDataVal(slot).compareTo(searchkey) < 0)
+      while (slot < getNumRecs() && compareDataVal(slot, searchkey) < 0)
          slot++;
       return slot-1;
    }
@@ -63,7 +62,7 @@ public class BTreePage {
     * @return true if the block is full
     */
    public boolean isFull() {
-      return slotpos(getNumRecs()+1) >= SimpleDB.BLOCK_SIZE;
+      return slotpos(getNumRecs()+1) >= capacity();
    }
    
    /**
@@ -77,8 +76,21 @@ public class BTreePage {
    public Block split(int splitpos, int flag) {
       Block newblk = appendNew(flag);
       BTreePage newpage = new BTreePage(newblk, ti, tx);
-      transferRecs(splitpos, newpage);
-      newpage.setFlag(flag);
+      // the new block follows the current one, so the two pages are latched in block order
+      tx.latchExclusive(currentblk);
+      try {
+         tx.latchExclusive(newblk);
+         try {
+            transferRecs(splitpos, newpage);
+            newpage.setFlag(flag);
+         }
+         finally {
+            tx.unlatchExclusive(newblk);
+         }
+      }
+      finally {
+         tx.unlatchExclusive(currentblk);
+      }
       newpage.close();
       return newblk;
    }
@@ -92,6 +104,22 @@ public class BTreePage {
       return getVal(slot, "dataval");
    }
    
+   /**
+    * Compares the dataval of the simpledb.record in the specified slot
+    * with the specified key, without creating a constant
+    * for the stored dataval.
+    * @param slot the integer slot of an simpledb.index simpledb.record
+    * @param key the key to compare with
+    * @return the sign of the comparison of the dataval with the key
+    */
+   public int compareDataVal(int slot, Constant key) {
+      int pos = fldpos(slot, "dataval");
+      if (ti.schema().type("dataval") == INTEGER)
+         return Integer.compare(tx.getInt(currentblk, pos), (Integer) key.asJavaVal());
+      else
+         return tx.compareString(currentblk, pos, (String) key.asJavaVal());
+   }
+   
    /**
     * Returns the value of the page's flag field
     * @return the value of the page's flag field
@@ -105,7 +133,13 @@ public class BTreePage {
     * @param val the new value of the page flag
     */
    public void setFlag(int val) {
-      tx.setInt(currentblk, 0, val);
+      tx.latchExclusive(currentblk);
+      try {
+         tx.setInt(currentblk, 0, val);
+      }
+      finally {
+         tx.unlatchExclusive(currentblk);
+      }
    }
    
    /**
@@ -137,9 +171,15 @@ public class BTreePage {
     * @param blknum the block number to be stored
     */
    public void insertDir(int slot, Constant val, int blknum) {
-      insert(slot);
-      setVal(slot, "dataval", val);
-      setInt(slot, "block", blknum);
+      tx.latchExclusive(currentblk);
+      try {
+         insert(slot);
+         setVal(slot, "dataval", val);
+         setInt(slot, "block", blknum);
+      }
+      finally {
+         tx.unlatchExclusive(currentblk);
+      }
    }
    
    // Methods called only by BTreeLeaf
@@ -160,10 +200,16 @@ public class BTreePage {
     * @param rid the new dataRID
     */
    public void insertLeaf(int slot, Constant val, RID rid) {
-      insert(slot);
-      setVal(slot, "dataval", val);
-      setInt(slot, "block", rid.blockNumber());
-      setInt(slot, "id", rid.id());
+      tx.latchExclusive(currentblk);
+      try {
+         insert(slot);
+         setVal(slot, "dataval", val);
+         setInt(slot, "block", rid.blockNumber());
+         setInt(slot, "id", rid.id());
+      }
+      finally {
+         tx.unlatchExclusive(currentblk);
+      }
    }
    
    /**
@@ -171,10 +217,15 @@ public class BTreePage {
     * @param slot the slot of the deleted simpledb.index simpledb.record
     */
    public void delete(int slot) {
-      for (int i=slot+1; i<getNumRecs(); i++)
-         copyRecord(i, i-1);
-      setNumRecs(getNumRecs()-1);
-      return;
+      tx.latchExclusive(currentblk);
+      try {
+         for (int i=slot+1; i<getNumRecs(); i++)
+            copyRecord(i, i-1);
+         setNumRecs(getNumRecs()-1);
+      }
+      finally {
+         tx.unlatchExclusive(currentblk);
+      }
    }
    
    /**
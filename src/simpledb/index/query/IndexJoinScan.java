@@ -86,6 +86,17 @@ public class IndexJoinScan implements Scan {
          return s.getVal(fldname);
    }
    
+   /**
+    * Compares the value of the specified field with a constant.
+    * @see simpledb.query.Scan#compareVal(java.lang.String, simpledb.query.Constant)
+    */
+   public int compareVal(String fldname, Constant val) {
+      if (ts.hasField(fldname))
+         return ts.compareVal(fldname, val);
+      else
+         return s.compareVal(fldname, val);
+   }
+   
    /**
     * Returns the integer value of the specified field.
     * @see simpledb.query.Scan#getVal(java.lang.String)
@@ -72,6 +72,15 @@ public class IndexSelectScan implements Scan {
       return ts.getVal(fldname);
    }
    
+   /**
+    * Compares the value of the field of the current data simpledb.record
+    * with a constant.
+    * @see simpledb.query.Scan#compareVal(java.lang.String, simpledb.query.Constant)
+    */
+   public int compareVal(String fldname, Constant val) {
+      return ts.compareVal(fldname, val);
+   }
+   
    /**
     * Returns the value of the field of the current data simpledb.record.
     * @see simpledb.query.Scan#getInt(java.lang.String)
@@ -17,6 +17,7 @@ import simpledb.file.Page;
 public class BasicLogRecord {
    private Page pg;
    private int pos;
+   private long lsn;
    
    /**
     * A simpledb.log simpledb.record located at the specified position of the specified page.
@@ -30,6 +31,28 @@ public class BasicLogRecord {
       this.pos = pos;
    }
    
+   /**
+    * Positions the object at the simpledb.log simpledb.record starting at the
+    * specified position of its page, so that the same object can
+    * be used to read each simpledb.record of the page.
+    * This method is called exclusively by the simpledb.log iterators.
+    * @param pos the position of the simpledb.log simpledb.record
+    * @param lsn the LSN of the simpledb.log simpledb.record
+    */
+   void moveTo(int pos, long lsn) {
+      this.pos = pos;
+      this.lsn = lsn;
+   }
+   
+   /**
+    * Returns the LSN of the simpledb.log simpledb.record,
+    * that is, the offset of its end in the simpledb.log simpledb.file.
+    * @return the LSN of the simpledb.log simpledb.record
+    */
+   public long lsn() {
+      return lsn;
+   }
+   
    /**
     * Returns the next value of the current simpledb.log simpledb.record,
     * assuming it is an integer.
@@ -51,4 +74,16 @@ public class BasicLogRecord {
       pos += STR_SIZE(result.length());
       return result;
    }
+   
+   /**
+    * Returns the next value of the current simpledb.log simpledb.record,
+    * assuming it is an array of bytes.
+    * @return the next value of the current simpledb.log simpledb.record
+    */
+   public byte[] nextBytes() {
+      int len = pg.getInt(pos);
+      byte[] result = pg.getBytes(pos + INT_SIZE, len);
+      pos += INT_SIZE + len;
+      return result;
+   }
 }
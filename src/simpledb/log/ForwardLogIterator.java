@@ -0,0 +1,101 @@
+package simpledb.log;
+
+import static simpledb.file.Page.INT_SIZE;
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+import java.util.*;
+
+/**
+ * A class that provides the ability to move through the
+ * records of the simpledb.log simpledb.file in the order in which they
+ * were appended.
+ * The records of a block are chained backwards, so
+ * the iterator reads each block and follows the chain
+ * to find the positions of its records, which are then
+ * returned in reverse.
+ */
+class ForwardLogIterator implements Iterator<BasicLogRecord> {
+   private String logfile;
+   private long startLSN;
+   private int lastblk;
+   private Block blk;
+   private Page pg = new Page();
+   private int[] positions = new int[64];  // the ends of the records of the block, last first
+   private int currentrec;
+   private BasicLogRecord rec = new BasicLogRecord(pg, 0);
+
+   /**
+    * Creates an iterator for the records in the simpledb.log simpledb.file
+    * that follow the specified LSN, up to the specified one.
+    * This constructor is called exclusively by
+    * {@link LogMgr#iterator(long)}.
+    * @param logfile the name of the simpledb.log simpledb.file
+    * @param startLSN the LSN after which the iteration starts
+    * @param endLSN the LSN of the last simpledb.log simpledb.record
+    */
+   ForwardLogIterator(String logfile, long startLSN, long endLSN) {
+      this.logfile = logfile;
+      this.startLSN = startLSN;
+      lastblk = (int) (endLSN / SimpleDB.BLOCK_SIZE);
+      moveToBlock((int) (startLSN / SimpleDB.BLOCK_SIZE));
+      skipToStart();
+   }
+
+   /**
+    * Determines if there is a later simpledb.record in the simpledb.log simpledb.file.
+    * @return true if there is a later simpledb.record
+    */
+   public boolean hasNext() {
+      while (currentrec == 0 && blk.number() < lastblk)
+         moveToBlock(blk.number() + 1);
+      return currentrec > 0;
+   }
+
+   /**
+    * Moves to the next simpledb.log simpledb.record in forward order.
+    * If the current simpledb.log simpledb.record is the latest in its block,
+    * then the method moves to the next block,
+    * and returns the simpledb.log simpledb.record from there.
+    * The same simpledb.record object is returned by each call,
+    * positioned at the next simpledb.record.
+    * @return the next simpledb.log simpledb.record
+    */
+   public BasicLogRecord next() {
+      if (!hasNext())
+         throw new NoSuchElementException();
+      currentrec--;
+      int end = positions[currentrec];
+      rec.moveTo(pg.getInt(end) + INT_SIZE, LogMgr.lsn(blk, end + INT_SIZE));
+      return rec;
+   }
+
+   public void remove() {
+      throw new UnsupportedOperationException();
+   }
+
+   /**
+    * Reads the specified block, and collects the positions
+    * of its records by following the chain of pointers
+    * from the last simpledb.record of the block.
+    */
+   private void moveToBlock(int blknum) {
+      blk = new Block(logfile, blknum);
+      pg.read(blk);
+      currentrec = 0;
+      for (int pos = pg.getInt(LogMgr.LAST_POS); pos > 0; pos = pg.getInt(pos)) {
+         if (currentrec == positions.length)
+            positions = Arrays.copyOf(positions, 2 * currentrec);
+         positions[currentrec++] = pos;
+      }
+   }
+
+   /**
+    * Skips the records of the first block that end
+    * at or before the starting LSN.
+    */
+   private void skipToStart() {
+      while (currentrec > 0
+            && LogMgr.lsn(blk, positions[currentrec-1] + INT_SIZE) <= startLSN)
+         currentrec--;
+   }
+}
@@ -0,0 +1,96 @@
+package simpledb.log;
+
+/**
+ * The background flusher of the simpledb.log, which implements group commit
+ * and writes the full blocks of the simpledb.log while the clients
+ * append to the next one.
+ * A client that needs its simpledb.log records on disk requests a flush
+ * and waits; the flusher waits for the flush window, so that
+ * other clients can append and request their own flushes,
+ * and then writes and forces the simpledb.log once for all of them.
+ */
+class LogFlusher extends Thread {
+   private LogMgr logMgr;
+   private long window;
+   private boolean requested = false;
+   private boolean stopped = false;
+
+   /**
+    * Creates a flusher for the specified simpledb.log manager.
+    * @param logMgr the simpledb.log manager whose records are flushed
+    * @param window the time the flusher waits after a request
+    * before flushing, in microseconds
+    */
+   LogFlusher(LogMgr logMgr, long window) {
+      super("simpledb-log-flusher");
+      this.logMgr = logMgr;
+      this.window = window;
+      setDaemon(true);
+   }
+
+   /**
+    * Flushes the simpledb.log whenever a flush is requested,
+    * until the flusher is shut down.
+    */
+   public void run() {
+      while (waitForRequest()) {
+         if (window > 0) {
+            try {
+               Thread.sleep(window / 1000, (int) (window % 1000) * 1000);
+            }
+            catch (InterruptedException e) {}
+         }
+         try {
+            while (logMgr.flushPending()) {}
+         }
+         catch (RuntimeException e) {
+            logMgr.flushFailed(e);
+         }
+      }
+   }
+
+   /**
+    * Asks the flusher to write the pending blocks of the simpledb.log.
+    */
+   synchronized void request() {
+      requested = true;
+      notifyAll();
+   }
+
+   /**
+    * Stops the flusher, waiting for the end of its current flush.
+    * The thread is not interrupted, since an interrupt would
+    * close the simpledb.file channel it is writing to.
+    * An interrupt of the calling thread does not end the wait,
+    * but is restored once the flusher has stopped.
+    */
+   void shutdown() {
+      synchronized (this) {
+         stopped = true;
+         notifyAll();
+      }
+      boolean interrupted = false;
+      while (isAlive()) {
+         try {
+            join();
+         }
+         catch (InterruptedException e) {
+            interrupted = true;
+         }
+      }
+      if (interrupted)
+         Thread.currentThread().interrupt();
+   }
+
+   private synchronized boolean waitForRequest() {
+      try {
+         while (!requested && !stopped)
+            wait();
+      }
+      catch (InterruptedException e) {
+         stopped = true;
+      }
+      requested = false;
+      return !stopped;
+   }
+}
@@ -14,6 +14,7 @@ class LogIterator implements Iterator<BasicLogRecord> {
    private Block blk;
    private Page pg = new Page();
    private int currentrec;
+   private BasicLogRecord rec = new BasicLogRecord(pg, 0);
    
    /**
     * Creates an iterator for the records in the simpledb.log simpledb.file,
@@ -41,13 +42,17 @@ class LogIterator implements Iterator<BasicLogRecord> {
     * If the current simpledb.log simpledb.record is the earliest in its block,
     * then the method moves to the next oldest block,
     * and returns the simpledb.log simpledb.record from there.
+    * The same simpledb.record object is returned by each call,
+    * positioned at the next simpledb.record.
     * @return the next earliest simpledb.log simpledb.record
     */
    public BasicLogRecord next() {
       if (currentrec == 0) 
          moveToNextBlock();
+      long lsn = LogMgr.lsn(blk, currentrec+INT_SIZE);
       currentrec = pg.getInt(currentrec);
-      return new BasicLogRecord(pg, currentrec+INT_SIZE);
+      rec.moveTo(currentrec+INT_SIZE, lsn);
+      return rec;
    }
    
    public void remove() {
@@ -9,10 +9,29 @@ import java.util.*;
  * The low-level simpledb.log manager.
  * This simpledb.log manager is responsible for writing simpledb.log records
  * into a simpledb.log simpledb.file.
- * A simpledb.log simpledb.record can be any sequence of integer and string values.
+ * A simpledb.log simpledb.record can be any sequence of integer and string values,
+ * which the simpledb.record writes directly into the simpledb.log page
+ * (see {@link LogWritable}).
  * The simpledb.log manager does not understand the meaning of these
  * values, which are written and read by the
  * {@link simpledb.tx.recovery.RecoveryMgr recovery manager}.
+ * The LSN of a simpledb.log simpledb.record is the byte offset of its end
+ * in the simpledb.log simpledb.file, so the simpledb.log manager knows exactly
+ * which records are on disk.
+ * When {@link simpledb.server.SimpleDB#GROUP_COMMIT group commit}
+ * is enabled, the simpledb.log is written by a background
+ * {@link LogFlusher flusher}, and the simpledb.log manager keeps two pages:
+ * when the current block is full, its page is handed to the flusher,
+ * and the records are appended to the other page while the full one
+ * is written; an append waits only if the previous full block
+ * is still being written.
+ * The clients that flush the simpledb.log do not write it
+ * themselves either: they wait for the flusher,
+ * which writes and forces the current block once for all the records
+ * appended up to that moment, so that concurrent commits share
+ * a single disk sync.
+ * The blocks are always written and forced in order, so the simpledb.log
+ * simpledb.file never has holes.
  * @author Edward Sciore
  */
 public class LogMgr implements Iterable<BasicLogRecord> {
@@ -24,13 +43,23 @@ public class LogMgr implements Iterable<BasicLogRecord> {
 
    private String logfile;
    private Page mypage = new Page();
+   private Page spare = new Page();  // the other page; null while the flusher writes it
+   private Page fullpage;            // a full block waiting to be written
+   private Block fullblk;
+   private long fullLSN;
    private Block currentblk;
    private int currentpos;
+   private long appendedLSN;   // the end of the last record appended
+   private volatile long flushedLSN;  // the end of the records that are on disk
+   private long requestedLSN;  // the largest LSN that clients are waiting for
+   private RuntimeException failure;
+   private LogFlusher flusher;
+   private LogWriter writer = new LogWriter(this);
 
    /**
     * Creates the manager for the specified simpledb.log simpledb.file.
-    * If the simpledb.log simpledb.file does not yet exist, it is created
-    * with an empty first block.
+    * If the simpledb.log simpledb.file does not yet exist, its first block
+    * is created empty, and written by the first flush.
     * This constructor depends on a {@link FileMgr} object
     * that it gets from the method
     * {@link simpledb.server.SimpleDB#fileMgr()}.
@@ -43,110 +72,313 @@ public class LogMgr implements Iterable<BasicLogRecord> {
    public LogMgr(String logfile) {
       this.logfile = logfile;
       int logsize = SimpleDB.fileMgr().size(logfile);
-      if (logsize == 0)
-         appendNewBlock();
+      if (logsize == 0) {
+         currentblk = new Block(logfile, 0);
+         setLastRecordPosition(0);
+         currentpos = INT_SIZE;
+      }
       else {
          currentblk = new Block(logfile, logsize-1);
          mypage.read(currentblk);
          currentpos = getLastRecordPosition() + INT_SIZE;
       }
+      appendedLSN = flushedLSN = lsn(currentblk, currentpos);
+      if (SimpleDB.GROUP_COMMIT) {
+         flusher = new LogFlusher(this, SimpleDB.GROUP_COMMIT_WINDOW);
+         flusher.start();
+      }
    }
 
    /**
     * Ensures that the simpledb.log records corresponding to the
     * specified LSN has been written to disk.
     * All earlier simpledb.log records will also be written to disk.
+    * The common case of a simpledb.record that is already on disk
+    * is detected without locking the simpledb.log manager.
+    * If the calling thread is interrupted while it waits for the flusher,
+    * it keeps waiting, since the records must reach the disk anyway,
+    * and its interrupt status is restored before the method returns.
     * @param lsn the LSN of a simpledb.log simpledb.record
+    * @return true if the simpledb.log had to be written
+    */
+   public boolean flush(long lsn) {
+      if (lsn <= flushedLSN)
+         return false;
+      synchronized (this) {
+         boolean written = false;
+         boolean interrupted = false;
+         try {
+            while (flushedLSN < lsn) {
+               written = true;
+               if (flusher == null) {
+                  flush();
+                  break;
+               }
+               requestedLSN = Math.max(requestedLSN, lsn);
+               interrupted |= awaitFlusher();
+            }
+         }
+         finally {
+            if (interrupted)
+               Thread.currentThread().interrupt();
+         }
+         return written;
+      }
+   }
+
+   /**
+    * Writes the oldest part of the simpledb.log that needs
+    * to be written, if any: first a full block,
+    * then the current block if some client is waiting for it.
+    * The current block is copied into the spare page,
+    * so that appends can continue during the write.
+    * Called by the flusher's background thread.
+    * @return true if something was written
+    */
+   boolean flushPending() {
+      Page page;
+      Block blk;
+      long lsn;
+      synchronized (this) {
+         if (fullpage != null) {
+            page = fullpage;
+            blk = fullblk;
+            lsn = fullLSN;
+         }
+         else if (requestedLSN > flushedLSN) {
+            page = spare;
+            spare = null;
+            page.copyFrom(mypage);
+            blk = currentblk;
+            lsn = appendedLSN;
+         }
+         else {
+            notifyAll();
+            return false;
+         }
+      }
+      page.write(blk);
+      SimpleDB.fileMgr().force(logfile);
+      synchronized (this) {
+         fullpage = null;
+         spare = page;
+         flushedLSN = Math.max(flushedLSN, lsn);
+         notifyAll();
+      }
+      return true;
+   }
+
+   /**
+    * Records that the flusher could not write the simpledb.log,
+    * so that the waiting clients fail instead of waiting forever.
+    * @param e the cause of the failure
+    */
+   synchronized void flushFailed(RuntimeException e) {
+      failure = e;
+      notifyAll();
+   }
+
+   /**
+    * Stops the flusher, after writing any pending records.
     */
-   public void flush(int lsn) {
-      if (lsn >= currentLSN())
+   public void shutdown() {
+      if (flusher != null)
+         flusher.shutdown();
+      synchronized (this) {
+         flusher = null;
+         if (fullpage != null) {
+            fullpage.write(fullblk);
+            SimpleDB.fileMgr().force(logfile);
+            spare = fullpage;
+            fullpage = null;
+         }
          flush();
+         notifyAll();
+      }
    }
 
    /**
     * Returns an iterator for the simpledb.log records,
     * which will be returned in reverse order starting with the most recent.
+    * The iterator returns the same {@link BasicLogRecord} object
+    * each time, positioned at the next simpledb.record, so a simpledb.record
+    * must be read before the iterator is advanced.
     * @see java.lang.Iterable#iterator()
     */
    public synchronized Iterator<BasicLogRecord> iterator() {
-      flush();
-      return new LogIterator(currentblk);
+      long lsn = appendedLSN;
+      flush(lsn);
+      return new LogIterator(new Block(logfile, (int) (lsn / SimpleDB.BLOCK_SIZE)));
+   }
+
+   /**
+    * Returns an iterator for the simpledb.log records that follow
+    * the specified LSN, which will be returned in the order
+    * in which they were appended, ending with the most recent.
+    * As with {@link #iterator()}, the iterator returns the same
+    * {@link BasicLogRecord} object each time.
+    * @param lsn the LSN of the simpledb.log simpledb.record after which the iteration starts,
+    * or 0 to start from the beginning of the simpledb.log
+    * @return an iterator for the following simpledb.log records
+    */
+   public synchronized Iterator<BasicLogRecord> iterator(long lsn) {
+      long endLSN = appendedLSN;
+      flush(endLSN);
+      return new ForwardLogIterator(logfile, lsn, endLSN);
    }
 
    /**
     * Appends a simpledb.log simpledb.record to the simpledb.file.
-    * The simpledb.record contains an arbitrary array of strings and integers.
+    * The simpledb.record writes an arbitrary sequence of strings and integers.
     * The method also writes an integer to the end of each simpledb.log simpledb.record whose value
     * is the offset of the corresponding integer for the previous simpledb.log simpledb.record.
     * These integers allow simpledb.log records to be read in reverse order.
-    * @param rec the list of values
-    * @return the LSN of the final value
-    */
-   public synchronized int append(Object[] rec) {
-      int recsize = INT_SIZE;  // 4 bytes for the integer that points to the previous simpledb.log simpledb.record
-      for (Object obj : rec)
-         recsize += size(obj);
-      if (currentpos + recsize >= SimpleDB.BLOCK_SIZE){ // the simpledb.log simpledb.record doesn't fit,
-         flush();        // so move to the next block.
-         appendNewBlock();
+    * A simpledb.record that does not fit in an empty block is refused,
+    * so the simpledb.log moves to the next block at most once.
+    * @param rec the simpledb.record
+    * @return the LSN of the simpledb.record
+    */
+   public synchronized long append(LogWritable rec) {
+      int size = rec.logSize();
+      if (size > maxRecordSize())
+         throw new RuntimeException("simpledb.log simpledb.record of " + size
+               + " bytes does not fit in a simpledb.log block of " + SimpleDB.BLOCK_SIZE + " bytes");
+      int recsize = INT_SIZE + size;  // 4 bytes for the integer that points to the previous simpledb.log simpledb.record
+      boolean interrupted = false;
+      try {
+         while (currentpos + recsize > capacity()) { // the simpledb.log simpledb.record doesn't fit,
+            if (flusher != null && spare == null)
+               interrupted |= awaitFlusher();  // so wait for the other page to be written,
+            else
+               appendNewBlock();  // or move to the next block.
+         }
+      }
+      finally {
+         if (interrupted)
+            Thread.currentThread().interrupt();
       }
-      for (Object obj : rec)
-         appendVal(obj);
+      rec.writeTo(writer);
       finalizeRecord();
-      return currentLSN();
+      appendedLSN = lsn(currentblk, currentpos);
+      return appendedLSN;
    }
 
    /**
-    * Adds the specified value to the page at the position denoted by
+    * Returns the LSN of the last simpledb.record appended to the simpledb.log,
+    * that is, the current end of the simpledb.log.
+    * @return the LSN of the last simpledb.log simpledb.record
+    */
+   public synchronized long currentLSN() {
+      return appendedLSN;
+   }
+
+   /**
+    * Returns the largest size of a simpledb.log simpledb.record, that is,
+    * the space of an empty block minus the pointer to the last simpledb.record
+    * and the pointer that follows the simpledb.record.
+    * @return the maximum value of {@link LogWritable#logSize()}
+    */
+   public static int maxRecordSize() {
+      return capacity() - 2 * INT_SIZE;
+   }
+
+   /**
+    * Adds the specified integer to the page at the position denoted by
     * currentpos.  Then increments currentpos by the size of the value.
-    * @param val the integer or string to be added to the page
+    * Called by the {@link LogWriter} during an append.
+    * @param val the integer to be added to the page
     */
-   private void appendVal(Object val) {
-      if (val instanceof String)
-         mypage.setString(currentpos, (String)val);
-      else
-         mypage.setInt(currentpos, (Integer)val);
-      currentpos += size(val);
+   void appendInt(int val) {
+      mypage.setInt(currentpos, val);
+      currentpos += INT_SIZE;
    }
 
    /**
-    * Calculates the size of the specified integer or string.
-    * @param val the value
-    * @return the size of the value, in bytes
+    * Adds the specified string to the page at the position denoted by
+    * currentpos.  Then increments currentpos by the size of the value.
+    * Called by the {@link LogWriter} during an append.
+    * @param val the string to be added to the page
     */
-   private int size(Object val) {
-      if (val instanceof String) {
-         String sval = (String) val;
-         return STR_SIZE(sval.length());
-      }
-      else
-         return INT_SIZE;
+   void appendString(String val) {
+      mypage.setString(currentpos, val);
+      currentpos += STR_SIZE(val.length());
+   }
+
+   /**
+    * Adds the specified bytes to the page at the position denoted by
+    * currentpos, preceded by their number.
+    * Then increments currentpos by the size of the value.
+    * Called by the {@link LogWriter} during an append.
+    * @param val the bytes to be added to the page
+    */
+   void appendBytes(byte[] val) {
+      mypage.setInt(currentpos, val.length);
+      mypage.setBytes(currentpos + INT_SIZE, val);
+      currentpos += INT_SIZE + val.length;
    }
 
    /**
-    * Returns the LSN of the most recent simpledb.log simpledb.record.
-    * As implemented, the LSN is the block number where the simpledb.record is stored.
-    * Thus every simpledb.log simpledb.record in a block has the same LSN.
-    * @return the LSN of the most recent simpledb.log simpledb.record
+    * Returns the LSN of the specified position of a block,
+    * that is, its byte offset in the simpledb.log simpledb.file.
+    * @param blk a block of the simpledb.log
+    * @param pos a position in the block
+    * @return the corresponding LSN
     */
-   private int currentLSN() {
-      return currentblk.number();
+   static long lsn(Block blk, int pos) {
+      return (long) blk.number() * SimpleDB.BLOCK_SIZE + pos;
    }
 
    /**
-    * Writes the current page to the simpledb.log simpledb.file.
+    * Writes the current page to the simpledb.log simpledb.file,
+    * and forces the simpledb.file to disk.
+    * Used when there is no flusher.
     */
    private void flush() {
       mypage.write(currentblk);
+      SimpleDB.fileMgr().force(logfile);
+      flushedLSN = appendedLSN;
+   }
+
+   /**
+    * Wakes up the flusher, and waits until it has written something.
+    * An interrupt ends the wait, but is not propagated:
+    * the caller waits again, and restores the interrupt status
+    * once its records are on disk.
+    * @return true if the calling thread was interrupted
+    */
+   private boolean awaitFlusher() {
+      if (failure != null)
+         throw new RuntimeException("cannot flush the simpledb.log", failure);
+      flusher.request();
+      try {
+         wait();
+         return false;
+      }
+      catch (InterruptedException e) {
+         return true;  // the records must reach the disk anyway
+      }
    }
 
    /**
-    * Clear the current page, and append it to the simpledb.log simpledb.file.
+    * Moves to the next block of the simpledb.log, with a cleared page.
+    * Without a flusher, the current page is written first;
+    * otherwise it is handed to the flusher, and the spare
+    * page becomes the current one.
     */
    private void appendNewBlock() {
+      if (flusher == null)
+         flush();
+      else {
+         fullpage = mypage;
+         fullblk = currentblk;
+         fullLSN = appendedLSN;
+         mypage = spare;
+         spare = null;
+         flusher.request();
+      }
+      currentblk = new Block(logfile, currentblk.number() + 1);
       setLastRecordPosition(0);
       currentpos = INT_SIZE;
-      currentblk = mypage.append(logfile);
    }
 
    /**
@@ -0,0 +1,24 @@
+package simpledb.log;
+
+/**
+ * A simpledb.log simpledb.record that can be appended to the simpledb.log.
+ * The simpledb.record writes its values directly into the simpledb.log page,
+ * through a {@link LogWriter}, so that appending it
+ * does not create any intermediate object.
+ */
+public interface LogWritable {
+   /**
+    * Returns the number of bytes needed to store the values
+    * of the simpledb.record, which are written by {@link #writeTo(LogWriter)}.
+    * An integer takes {@link simpledb.file.Page#INT_SIZE} bytes, and a string
+    * of n characters {@link simpledb.file.Page#STR_SIZE(int) STR_SIZE(n)} bytes.
+    * @return the size of the values of the simpledb.record
+    */
+   int logSize();
+   
+   /**
+    * Writes the values of the simpledb.record, in order.
+    * @param out the writer positioned at the simpledb.record
+    */
+   void writeTo(LogWriter out);
+}
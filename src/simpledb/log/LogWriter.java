@@ -0,0 +1,49 @@
+package simpledb.log;
+
+/**
+ * A class that provides the ability to write the values of
+ * a simpledb.log simpledb.record into the simpledb.log page.
+ * It is the counterpart of {@link BasicLogRecord}:
+ * the values are written sequentially, with the same layout
+ * that {@link BasicLogRecord#nextInt() nextInt} and
+ * {@link BasicLogRecord#nextString() nextString} and
+ * {@link BasicLogRecord#nextBytes() nextBytes} read.
+ * The simpledb.log manager has a single writer, which is
+ * used only while a simpledb.record is being appended.
+ */
+public class LogWriter {
+   private LogMgr logMgr;
+
+   /**
+    * Creates the writer of the specified simpledb.log manager.
+    * This constructor is called exclusively by {@link LogMgr}.
+    * @param logMgr the simpledb.log manager
+    */
+   LogWriter(LogMgr logMgr) {
+      this.logMgr = logMgr;
+   }
+
+   /**
+    * Writes an integer as the next value of the simpledb.record.
+    * @param val the integer
+    */
+   public void writeInt(int val) {
+      logMgr.appendInt(val);
+   }
+
+   /**
+    * Writes a string as the next value of the simpledb.record.
+    * @param val the string
+    */
+   public void writeString(String val) {
+      logMgr.appendString(val);
+   }
+
+   /**
+    * Writes an array of bytes as the next value of the simpledb.record.
+    * @param val the bytes
+    */
+   public void writeBytes(byte[] val) {
+      logMgr.appendBytes(val);
+   }
+}
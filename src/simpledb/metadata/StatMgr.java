@@ -51,7 +51,7 @@ class StatMgr {
       tablestats = new HashMap<String,StatInfo>();
       numcalls = 0;
       TableInfo tcatmd = tblMgr.getTableInfo("tblcat", tx);
-      RecordFile tcatfile = new RecordFile(tcatmd, tx);
+      RecordFile tcatfile = new RecordFile(tcatmd, tx, true);
       while(tcatfile.next()) {
          String tblname = tcatfile.getString("tblname");
          TableInfo md = tblMgr.getTableInfo(tblname, tx);
@@ -63,7 +63,7 @@ class StatMgr {
    
    private synchronized StatInfo calcTableStats(TableInfo ti, Transaction tx) {
       int numRecs = 0;
-      RecordFile rf = new RecordFile(ti, tx);
+      RecordFile rf = new RecordFile(ti, tx, true);
       int numblocks = 0;
       while (rf.next()) {
          numRecs++;
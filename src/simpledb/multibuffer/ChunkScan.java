@@ -2,6 +2,7 @@ package simpledb.multibuffer;
 
 import static java.sql.Types.INTEGER;
 import simpledb.tx.Transaction;
+import simpledb.buffer.BufferRing;
 import simpledb.record.*;
 import simpledb.file.Block;
 import simpledb.query.*;
@@ -27,14 +28,33 @@ public class ChunkScan implements Scan {
     * @param tx the current transaction
     */ 
    public ChunkScan(TableInfo ti, int startbnum, int endbnum, Transaction tx) {
+      this(ti, startbnum, endbnum, tx, null);
+   }
+   
+   /**
+    * Creates a chunk consisting of the specified pages,
+    * reading the pages that are not in the simpledb.buffer pool into
+    * the buffers of the specified ring.
+    * The pages are read with a single disk read.
+    * The ring is typically shared by the successive chunks of a scan,
+    * so that each chunk recycles the buffers of the previous one.
+    * @param ti the simpledb.metadata for the chunked table
+    * @param startbnum the starting block number
+    * @param endbnum  the ending block number
+    * @param tx the current transaction
+    * @param ring the buffer ring of the scan, or null
+    */ 
+   public ChunkScan(TableInfo ti, int startbnum, int endbnum, Transaction tx, BufferRing ring) {
       pages = new ArrayList<RecordPage>();
       this.startbnum = startbnum;
       this.endbnum   = endbnum;
       this.sch = ti.schema();
       String filename = ti.fileName();
+      tx.pinRange(filename, startbnum, endbnum - startbnum + 1, ring);
       for (int i=startbnum; i<=endbnum; i++) {
          Block blk = new Block(filename, i);
-         pages.add(new RecordPage(blk, ti, tx));
+         pages.add(new RecordPage(blk, ti, tx, ring));
+         tx.unpin(blk);
       }
       beforeFirst();
    }
@@ -82,6 +102,13 @@ public class ChunkScan implements Scan {
          return new StringConstant(rp.getString(fldname));
    }
    
+   /**
+    * @see simpledb.query.Scan#compareVal(java.lang.String, simpledb.query.Constant)
+    */
+   public int compareVal(String fldname, Constant val) {
+      return rp.compare(fldname, val);
+   }
+   
    /**
     * @see simpledb.query.Scan#getInt(java.lang.String)
     */
@@ -71,6 +71,18 @@ public class ProductScan implements Scan {
          return s2.getVal(fldname);
    }
    
+   /** 
+    * Compares the value of the specified field with a constant,
+    * in whichever scan contains the field.
+    * @see simpledb.query.Scan#compareVal(java.lang.String, simpledb.query.Constant)
+    */
+   public int compareVal(String fldname, Constant val) {
+      if (s1.hasField(fldname))
+         return s1.compareVal(fldname, val);
+      else
+         return s2.compareVal(fldname, val);
+   }
+   
    /** 
     * Returns the integer value of the specified field.
     * The value is obtained from whichever scan
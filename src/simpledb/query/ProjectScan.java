@@ -43,6 +43,13 @@ public class ProjectScan implements Scan {
          throw new RuntimeException("field " + fldname + " not found.");
    }
    
+   public int compareVal(String fldname, Constant val) {
+      if (hasField(fldname))
+         return s.compareVal(fldname, val);
+      else
+         throw new RuntimeException("field " + fldname + " not found.");
+   }
+   
    public int getInt(String fldname) {
       if (hasField(fldname))
          return s.getInt(fldname);
@@ -32,6 +32,21 @@ public interface Scan {
     */
    public Constant getVal(String fldname);
    
+   /**
+    * Compares the value of the specified field in the
+    * current simpledb.record with the specified constant.
+    * Scans that read their records from pages override this
+    * method to compare the value in place, without
+    * creating a Constant for it.
+    * @param fldname the name of the field
+    * @param val the constant to compare with
+    * @return a negative integer, zero, or a positive integer
+    * as the field's value is less than, equal to, or greater than val
+    */
+   public default int compareVal(String fldname, Constant val) {
+      return getVal(fldname).compareTo(val);
+   }
+   
    /**
     * Returns the value of the specified integer field 
     * in the current simpledb.record.
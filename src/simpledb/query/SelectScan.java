@@ -52,6 +52,10 @@ public class SelectScan implements UpdateScan {
       return s.getVal(fldname);
    }
    
+   public int compareVal(String fldname, Constant val) {
+      return s.compareVal(fldname, val);
+   }
+   
    public int getInt(String fldname) {
       return s.getInt(fldname);
    }
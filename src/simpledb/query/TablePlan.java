@@ -27,10 +27,12 @@ public class TablePlan implements Plan {
    
    /**
     * Creates a table scan for this simpledb.query.
+    * The scan reads the whole table, so it is sequential,
+    * and recycles a small ring of buffers.
     * @see simpledb.query.Plan#open()
     */
    public Scan open() {
-      return new TableScan(ti, tx);
+      return new TableScan(ti, tx, true);
    }
    
    /**
@@ -23,7 +23,20 @@ public class TableScan implements UpdateScan {
     * @param tx the calling transaction
     */
    public TableScan(TableInfo ti, Transaction tx) {
-      rf  = new RecordFile(ti, tx);
+      this(ti, tx, false);
+   }
+   
+   /**
+    * Creates a new table scan,
+    * and opens its corresponding simpledb.record simpledb.file,
+    * which is sequential if the scan reads the whole table
+    * (see {@link RecordFile#RecordFile(TableInfo, Transaction, boolean)}).
+    * @param ti the table's simpledb.metadata
+    * @param tx the calling transaction
+    * @param sequential whether the table will be scanned sequentially
+    */
+   public TableScan(TableInfo ti, Transaction tx, boolean sequential) {
+      rf  = new RecordFile(ti, tx, sequential);
       sch = ti.schema();
    }
    
@@ -55,6 +68,15 @@ public class TableScan implements UpdateScan {
          return new StringConstant(rf.getString(fldname));
    }
    
+   /**
+    * Compares the value of the specified field with a constant,
+    * in place in the simpledb.record's page.
+    * @see simpledb.query.Scan#compareVal(java.lang.String, simpledb.query.Constant)
+    */
+   public int compareVal(String fldname, Constant val) {
+      return rf.compare(fldname, val);
+   }
+   
    public int getInt(String fldname) {
       return rf.getInt(fldname);
    }
@@ -112,6 +112,10 @@ public class Term {
     * @return true if both expressions have the same value in the scan
     */
    public boolean isSatisfied(Scan s) {
+      if (lhs.isFieldName() && rhs.isConstant())
+         return s.compareVal(lhs.asFieldName(), rhs.asConstant()) == 0;
+      if (rhs.isFieldName() && lhs.isConstant())
+         return s.compareVal(rhs.asFieldName(), lhs.asConstant()) == 0;
       Constant lhsval = lhs.evaluate(s);
       Constant rhsval = rhs.evaluate(s);
       return rhsval.equals(lhsval);
@@ -1,6 +1,9 @@
 package simpledb.record;
 
+import simpledb.buffer.BufferRing;
 import simpledb.file.Block;
+import simpledb.query.Constant;
+import simpledb.server.SimpleDB;
 import simpledb.tx.Transaction;
 
 /**
@@ -15,6 +18,8 @@ public class RecordFile {
    private String filename;
    private RecordPage rp;
    private int currentblknum;
+   private int filesize;
+   private BufferRing ring;
    
    /**
     * Constructs an object to manage a simpledb.file of records.
@@ -23,10 +28,37 @@ public class RecordFile {
     * @param tx the transaction
     */
    public RecordFile(TableInfo ti, Transaction tx) {
+      this(ti, tx, false);
+   }
+   
+   /**
+    * Constructs an object to manage a simpledb.file of records.
+    * If the simpledb.file does not exist, it is created.
+    * The size of the simpledb.file is read, and the end of the simpledb.file
+    * locked, only once, here:
+    * the transaction keeps its lock on the end of the simpledb.file
+    * until it completes, so no other transaction can extend
+    * the simpledb.file in the meantime, and the blocks appended
+    * by this simpledb.record simpledb.file are added to the snapshot.
+    * Other simpledb.record files or indexes of the same transaction can
+    * still extend the simpledb.file, so the size is read again from the
+    * simpledb.file manager's cached count when the last block
+    * of the snapshot is reached.
+    * A sequential simpledb.record simpledb.file reads its blocks into a small
+    * private {@link BufferRing}, so that scanning a large table
+    * does not evict the pages cached for other clients.
+    * @param ti the table simpledb.metadata
+    * @param tx the transaction
+    * @param sequential whether the simpledb.file will be scanned sequentially
+    */
+   public RecordFile(TableInfo ti, Transaction tx, boolean sequential) {
       this.ti = ti;
       this.tx = tx;
+      if (sequential)
+         ring = new BufferRing();
       filename = ti.fileName();
-      if (tx.size(filename) == 0)
+      filesize = tx.size(filename);
+      if (filesize == 0)
          appendBlock();
       moveTo(0);
    }
@@ -81,6 +113,17 @@ public class RecordFile {
       return rp.getString(fldname);
    }
    
+   /**
+    * Compares the value of the specified field
+    * in the current simpledb.record with the specified constant.
+    * @param fldname the name of the field
+    * @param val the constant to compare with
+    * @return the sign of the comparison of the field's value with val
+    */
+   public int compare(String fldname, Constant val) {
+      return rp.compare(fldname, val);
+   }
+   
    /**
     * Sets the value of the specified field 
     * in the current simpledb.record.
@@ -150,15 +193,19 @@ public class RecordFile {
          rp.close();
       currentblknum = b;
       Block blk = new Block(filename, currentblknum);
-      rp = new RecordPage(blk, ti, tx);
+      rp = new RecordPage(blk, ti, tx, ring);
    }
    
    private boolean atLastBlock() {
-      return currentblknum == tx.size(filename) - 1;
+      if (currentblknum < filesize - 1)
+         return false;
+      filesize = SimpleDB.fileMgr().size(filename);
+      return currentblknum >= filesize - 1;
    }
    
    private void appendBlock() {
       RecordFormatter fmtr = new RecordFormatter(ti);
-      tx.append(filename, fmtr);
+      Block blk = tx.append(filename, fmtr);
+      filesize = Math.max(filesize, blk.number() + 1);
    }
 }
\ No newline at end of file
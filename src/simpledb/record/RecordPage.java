@@ -1,8 +1,10 @@
 package simpledb.record;
 
+import static java.sql.Types.INTEGER;
 import static simpledb.file.Page.*;
+import simpledb.buffer.BufferRing;
 import simpledb.file.Block;
-import simpledb.server.SimpleDB;
+import simpledb.query.Constant;
 import simpledb.tx.Transaction;
 
 /**
@@ -25,11 +27,24 @@ public class RecordPage {
      * @param tx the transaction performing the operations
      */
    public RecordPage(Block blk, TableInfo ti, Transaction tx) {
+      this(blk, ti, tx, null);
+   }
+   
+   /** Creates the simpledb.record manager for the specified block,
+     * whose buffer is taken from the specified ring
+     * if the block has to be read from disk.
+     * The current simpledb.record is set to be prior to the first one.
+     * @param blk a reference to the disk block
+     * @param ti the table's simpledb.metadata
+     * @param tx the transaction performing the operations
+     * @param ring the buffer ring of a sequential scan, or null
+     */
+   public RecordPage(Block blk, TableInfo ti, Transaction tx, BufferRing ring) {
       this.blk = blk;
       this.ti = ti;
       this.tx = tx;
       slotsize = ti.recordLength() + INT_SIZE;
-      tx.pin(blk);
+      tx.pin(blk, ring);
   }
    
    /**
@@ -72,6 +87,22 @@ public class RecordPage {
       return tx.getString(blk, position);
    }
    
+   /**
+    * Compares the value stored for the specified field
+    * of the current simpledb.record with the specified constant,
+    * without creating a constant for the stored value.
+    * @param fldname the name of the field
+    * @param val the constant to compare with
+    * @return the sign of the comparison of the stored value with val
+    */
+   public int compare(String fldname, Constant val) {
+      int position = fieldpos(fldname);
+      if (ti.schema().type(fldname) == INTEGER)
+         return Integer.compare(tx.getInt(blk, position), (Integer) val.asJavaVal());
+      else
+         return tx.compareString(blk, position, (String) val.asJavaVal());
+   }
+   
    /**
     * Stores an integer at the specified field
     * of the current simpledb.record.
@@ -80,7 +111,13 @@ public class RecordPage {
     */
    public void setInt(String fldname, int val) {
       int position = fieldpos(fldname);
-      tx.setInt(blk, position, val);
+      tx.latchExclusive(blk);
+      try {
+         tx.setInt(blk, position, val);
+      }
+      finally {
+         tx.unlatchExclusive(blk);
+      }
    }
    
    /**
@@ -91,7 +128,13 @@ public class RecordPage {
     */
    public void setString(String fldname, String val) {
       int position = fieldpos(fldname);
-      tx.setString(blk, position, val);
+      tx.latchExclusive(blk);
+      try {
+         tx.setString(blk, position, val);
+      }
+      finally {
+         tx.unlatchExclusive(blk);
+      }
    }
    
    /**
@@ -102,7 +145,13 @@ public class RecordPage {
     */
    public void delete() {
       int position = currentpos();
-      tx.setInt(blk, position, EMPTY);
+      tx.latchExclusive(blk);
+      try {
+         tx.setInt(blk, position, EMPTY);
+      }
+      finally {
+         tx.unlatchExclusive(blk);
+      }
    }
    
    /**
@@ -115,7 +164,13 @@ public class RecordPage {
       boolean found = searchFor(EMPTY);
       if (found) {
          int position = currentpos();
-         tx.setInt(blk, position, INUSE);
+         tx.latchExclusive(blk);
+         try {
+            tx.setInt(blk, position, INUSE);
+         }
+         finally {
+            tx.unlatchExclusive(blk);
+         }
       }
       return found;
    }
@@ -147,7 +202,7 @@ public class RecordPage {
    }
    
    private boolean isValidSlot() {
-      return currentpos() + slotsize <= SimpleDB.BLOCK_SIZE;
+      return currentpos() + slotsize <= capacity();
    }
    
    private boolean searchFor(int flag) {
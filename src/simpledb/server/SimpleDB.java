@@ -3,6 +3,7 @@ package simpledb.server;
 import simpledb.file.FileMgr;
 import simpledb.buffer.*;
 import simpledb.tx.Transaction;
+import simpledb.tx.recovery.RecoveryMgr;
 import simpledb.log.LogMgr;
 import simpledb.metadata.MetadataMgr;
 import simpledb.planner.*;
@@ -26,12 +27,73 @@ public class SimpleDB {
     * The number of bytes in a block.
     * This value is set unreasonably low, so that it is easier
     * to create and test databases having a lot of blocks.
-    * A more realistic value would be 4K.
+    * A more realistic value would be 4K (up to 64K is supported).
+    * The block size of a database is chosen when the database
+    * is created, and recorded in its header; the simpledb.file manager
+    * refuses to open the database with a different block size.
     */
    public static int BLOCK_SIZE = 400;
    public static int BUFFER_SIZE = 8;
    public static String LOG_FILE = "simpledb.simpledb.log";
+   /**
+    * The buffer replacement strategy:
+    * "naif", "clock", "lru" or "lruk" (LRU-2).
+    */
    public static String STRATEGY = "naif";
+   /**
+    * The number of blocks read ahead of a sequential scan
+    * by the simpledb.buffer manager's prefetcher; 0 disables prefetching.
+    */
+   public static int PREFETCH_DEPTH = 8;
+   /**
+    * The time between two passes of the background writer,
+    * in milliseconds; 0 disables the writer.
+    */
+   public static long WRITER_DELAY = 200;
+   /**
+    * The maximum time, in milliseconds, a client waits for
+    * a simpledb.buffer before a BufferAbortException is thrown.
+    */
+   public static long BUFFER_TIMEOUT = 10000;
+   /**
+    * Whether the data files are memory-mapped by the
+    * simpledb.file manager; single files can override this setting
+    * with {@link FileMgr#setMapped(String, boolean)}.
+    */
+   public static boolean MAPPED_IO = false;
+   /**
+    * The number of blocks by which the simpledb.file manager grows
+    * a simpledb.file when an append reaches its physical end;
+    * 1 disables preallocation.
+    */
+   public static int ALLOCATION_EXTENT = 64;
+   /**
+    * Whether the checksum of each page read from disk is verified;
+    * checksums are always written, so verification can be
+    * turned on and off at any time.
+    */
+   public static boolean VERIFY_CHECKSUMS = true;
+   /**
+    * Whether the simpledb.log is written by a background thread,
+    * which writes full simpledb.log blocks while the next one is being
+    * filled, and flushes the simpledb.log on behalf of all the
+    * committing transactions (group commit).
+    */
+   public static boolean GROUP_COMMIT = true;
+   /**
+    * The time the simpledb.log flusher waits after the first
+    * flush request, so that more commits can join the same
+    * disk sync, in microseconds; 0 flushes immediately,
+    * grouping only the commits that arrive during the previous sync.
+    */
+   public static long GROUP_COMMIT_WINDOW = 0;
+   /**
+    * The number of simpledb.log blocks appended between two checkpoints,
+    * which are written by a background thread while the transactions run;
+    * 0 disables periodic checkpoints, leaving only the one
+    * written by the recovery.
+    */
+   public static int CHECKPOINT_INTERVAL = 64;
 
    private static FileMgr     fm;
    private static BufferMgr   bm;
@@ -55,6 +117,7 @@ public class SimpleDB {
       }
       initMetadataMgr(isnew, tx);
       tx.commit();
+      RecoveryMgr.startCheckpointer();
    }
 
    public static void init(String dirname, String strategy, int blockSize, int bufferSize) {
@@ -81,6 +144,8 @@ public class SimpleDB {
     * @param dirname the name of the database directory
     */
    public static void initFileAndLogMgr(String dirname) {
+      if (logm != null)
+         logm.shutdown();
       initFileMgr(dirname);
       logm = new LogMgr(LOG_FILE);
    }
@@ -90,6 +155,9 @@ public class SimpleDB {
     * @param dirname the name of the database directory
     */
    public static void initFileLogAndBufferMgr(String dirname) {
+      RecoveryMgr.stopCheckpointer();
+      if (bm != null)
+         bm.shutdown();
       initFileAndLogMgr(dirname);
       bm = new BufferMgr(BUFFER_SIZE);
    }
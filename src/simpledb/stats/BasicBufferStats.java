@@ -0,0 +1,164 @@
+package simpledb.stats;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the buffer pool.
+ * The counters are lock-free, so they can be updated by concurrent
+ * pins of different partitions without contention.
+ * The counters of a file also update those of the whole pool,
+ * which is their parent.
+ */
+public class BasicBufferStats {
+
+    private final BasicBufferStats parent;
+    private final LongAdder pins = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder writeBacks = new LongAdder();
+    private final LongAdder dirtyEvictions = new LongAdder();
+    private final LongAdder backgroundWrites = new LongAdder();
+    private final LongAdder logFlushes = new LongAdder();
+    private final LongAdder prefetches = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder waitTime = new LongAdder();
+    private final LongAdder aborts = new LongAdder();
+
+    public BasicBufferStats() {
+        this(null);
+    }
+
+    public BasicBufferStats(BasicBufferStats parent) {
+        this.parent = parent;
+    }
+
+    public long getPins() {
+        return pins.sum();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getWriteBacks() {
+        return writeBacks.sum();
+    }
+
+    public long getDirtyEvictions() {
+        return dirtyEvictions.sum();
+    }
+
+    public long getBackgroundWrites() {
+        return backgroundWrites.sum();
+    }
+
+    public long getLogFlushes() {
+        return logFlushes.sum();
+    }
+
+    public long getPrefetches() {
+        return prefetches.sum();
+    }
+
+    public long getWaits() {
+        return waits.sum();
+    }
+
+    public long getWaitTime() {
+        return waitTime.sum();
+    }
+
+    public long getAborts() {
+        return aborts.sum();
+    }
+
+    public void incrementPins() {
+        this.pins.increment();
+        if (parent != null)
+            parent.incrementPins();
+    }
+
+    public void incrementHits() {
+        this.hits.increment();
+        if (parent != null)
+            parent.incrementHits();
+    }
+
+    public void incrementMisses() {
+        this.misses.increment();
+        if (parent != null)
+            parent.incrementMisses();
+    }
+
+    public void incrementEvictions() {
+        this.evictions.increment();
+        if (parent != null)
+            parent.incrementEvictions();
+    }
+
+    public void incrementWriteBacks() {
+        this.writeBacks.increment();
+        if (parent != null)
+            parent.incrementWriteBacks();
+    }
+
+    public void incrementDirtyEvictions() {
+        this.dirtyEvictions.increment();
+        this.incrementWriteBacks();
+        if (parent != null)
+            parent.dirtyEvictions.increment();
+    }
+
+    public void incrementBackgroundWrites() {
+        this.backgroundWrites.increment();
+        this.incrementWriteBacks();
+        if (parent != null)
+            parent.backgroundWrites.increment();
+    }
+
+    public void incrementLogFlushes() {
+        this.logFlushes.increment();
+        if (parent != null)
+            parent.incrementLogFlushes();
+    }
+
+    public void incrementPrefetches() {
+        this.prefetches.increment();
+        if (parent != null)
+            parent.incrementPrefetches();
+    }
+
+    public void incrementWaits() {
+        this.waits.increment();
+        if (parent != null)
+            parent.incrementWaits();
+    }
+
+    public void addWaitTime(long millis) {
+        this.waitTime.add(millis);
+        if (parent != null)
+            parent.addWaitTime(millis);
+    }
+
+    public void incrementAborts() {
+        this.aborts.increment();
+        if (parent != null)
+            parent.incrementAborts();
+    }
+
+    public double getHitRatio() {
+        long hits = getHits();
+        long lookups = hits + getMisses();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+}
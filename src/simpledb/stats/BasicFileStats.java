@@ -1,32 +1,54 @@
 package simpledb.stats;
 
+import java.util.concurrent.atomic.LongAdder;
+
 public class BasicFileStats {
 
-    private int blockRead = 0;
-    private int blockWritten = 0;
+    private final LongAdder blockRead = new LongAdder();
+    private final LongAdder blockWritten = new LongAdder();
+    private final LongAdder checksumsVerified = new LongAdder();
+    private final LongAdder checksumFailures = new LongAdder();
 
     public int getBlockRead() {
-        return blockRead;
+        return blockRead.intValue();
     }
 
     public int getBlockWritten() {
-        return blockWritten;
+        return blockWritten.intValue();
+    }
+
+    public long getChecksumsVerified() {
+        return checksumsVerified.sum();
+    }
+
+    public long getChecksumFailures() {
+        return checksumFailures.sum();
     }
 
     public void setBlockRead(int blockRead) {
-        this.blockRead = blockRead;
+        this.blockRead.reset();
+        this.blockRead.add(blockRead);
     }
 
     public void setBlockWritten(int blockWritten) {
-        this.blockWritten = blockWritten;
+        this.blockWritten.reset();
+        this.blockWritten.add(blockWritten);
     }
 
     public void incrementBlockRead() {
-        this.blockRead++;
+        this.blockRead.increment();
     }
 
     public void incrementBlockWritten() {
-        this.blockWritten++;
+        this.blockWritten.increment();
+    }
+
+    public void incrementChecksumsVerified() {
+        this.checksumsVerified.increment();
+    }
+
+    public void incrementChecksumFailures() {
+        this.checksumFailures.increment();
     }
 
 }
@@ -28,9 +28,10 @@ class BufferList {
    /**
     * Pins the block and keeps track of the simpledb.buffer internally.
     * @param blk a reference to the disk block
+    * @param ring the buffer ring of the calling scan, or null
     */
-   void pin(Block blk) {
-      Buffer buff = bufferMgr.pin(blk);
+   void pin(Block blk, BufferRing ring) {
+      Buffer buff = bufferMgr.pin(blk, ring);
       buffers.put(blk, buff);
       pins.add(blk);
    }
@@ -50,6 +51,22 @@ class BufferList {
       return blk;
    }
    
+   /**
+    * Pins the specified consecutive blocks of a simpledb.file
+    * and keeps track of their buffers internally.
+    * @param filename the name of the simpledb.file
+    * @param blknum the number of the first block
+    * @param count the number of blocks
+    * @param ring the buffer ring of the calling scan, or null
+    */
+   void pinRange(String filename, int blknum, int count, BufferRing ring) {
+      Buffer[] buffs = bufferMgr.pinRange(filename, blknum, count, ring);
+      for (Buffer buff : buffs) {
+         buffers.put(buff.block(), buff);
+         pins.add(buff.block());
+      }
+   }
+   
    /**
     * Unpins the specified block.
     * @param blk a reference to the disk block
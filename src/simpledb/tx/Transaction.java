@@ -40,8 +40,8 @@ public class Transaction {
    
    /**
     * Commits the current transaction.
-    * Flushes all modified buffers (and their simpledb.log records),
-    * writes and flushes a commit simpledb.record to the simpledb.log,
+    * Writes and flushes a commit simpledb.record to the simpledb.log,
+    * leaving the modified buffers to be written later,
     * releases all locks, and unpins any pinned buffers.
     */
    public void commit() {
@@ -54,7 +54,6 @@ public class Transaction {
    /**
     * Rolls back the current transaction.
     * Undoes any modified values,
-    * flushes those buffers,
     * writes and flushes a rollback simpledb.record to the simpledb.log,
     * releases all locks, and unpins any pinned buffers.
     */
@@ -67,14 +66,15 @@ public class Transaction {
    
    /**
     * Flushes all modified buffers.
-    * Then goes through the simpledb.log, rolling back all
+    * Then goes through the simpledb.log, redoing the updates
+    * since the last checkpoint and rolling back all
     * uncommitted transactions.  Finally, 
-    * writes a quiescent checkpoint simpledb.record to the simpledb.log.
+    * writes a checkpoint simpledb.record to the simpledb.log.
     * This method is called only during system startup,
     * before user transactions begin.
     */
    public void recover() {
-      SimpleDB.bufferMgr().flushAll(txnum);
+      SimpleDB.bufferMgr().flushAll();
       recoveryMgr.recover();
    }
    
@@ -84,7 +84,34 @@ public class Transaction {
     * @param blk a reference to the disk block
     */
    public void pin(Block blk) {
-      myBuffers.pin(blk);
+      myBuffers.pin(blk, null);
+   }
+   
+   /**
+    * Pins the specified block on behalf of a sequential scan.
+    * If the block is not in the simpledb.buffer pool, it is read
+    * into one of the buffers of the specified ring when possible.
+    * @param blk a reference to the disk block
+    * @param ring the scan's buffer ring, or null for none
+    */
+   public void pin(Block blk, BufferRing ring) {
+      myBuffers.pin(blk, ring);
+   }
+   
+   /**
+    * Pins the specified consecutive blocks of a simpledb.file
+    * on behalf of a scan.
+    * The blocks that are not in the simpledb.buffer pool are read
+    * with a single disk read, into the buffers of
+    * the specified ring when possible.
+    * Each block must later be unpinned separately.
+    * @param filename the name of the simpledb.file
+    * @param blknum the number of the first block
+    * @param count the number of blocks
+    * @param ring the scan's buffer ring, or null for none
+    */
+   public void pinRange(String filename, int blknum, int count, BufferRing ring) {
+      myBuffers.pinRange(filename, blknum, count, ring);
    }
    
    /**
@@ -127,6 +154,49 @@ public class Transaction {
       return buff.getString(offset);
    }
    
+   /**
+    * Compares the string value stored at the specified offset
+    * of the specified block with the specified string,
+    * without decoding the stored value.
+    * The method first obtains an SLock on the block,
+    * then it calls the simpledb.buffer to compare the value.
+    * @param blk a reference to a disk block
+    * @param offset the byte offset within the block
+    * @param val the string to compare with
+    * @return the sign of the comparison of the stored string with val
+    */
+   public int compareString(Block blk, int offset, String val) {
+      concurMgr.sLock(blk);
+      Buffer buff = myBuffers.getBuffer(blk);
+      return buff.compareString(offset, val);
+   }
+   
+   /**
+    * Prepares the specified block for a series of modifications.
+    * The method first obtains an XLock on the block,
+    * and then latches its simpledb.buffer in exclusive mode, so that
+    * the page is not written to disk while half-modified.
+    * The lock is obtained first, so that the transaction
+    * never waits for a lock while holding the latch.
+    * The block must be pinned, and the latch must be released
+    * by {@link #unlatchExclusive(Block) unlatchExclusive}
+    * at the end of the visit.
+    * @param blk a reference to the disk block
+    */
+   public void latchExclusive(Block blk) {
+      concurMgr.xLock(blk);
+      myBuffers.getBuffer(blk).latchExclusive();
+   }
+   
+   /**
+    * Ends the modifications of the specified block,
+    * by releasing the latch of its simpledb.buffer.
+    * @param blk a reference to the disk block
+    */
+   public void unlatchExclusive(Block blk) {
+      myBuffers.getBuffer(blk).unlatchExclusive();
+   }
+   
    /**
     * Stores an integer at the specified offset 
     * of the specified block.
@@ -136,6 +206,7 @@ public class Transaction {
     * writes that simpledb.record to the simpledb.log.
     * Finally, it calls the simpledb.buffer to store the value,
     * passing in the LSN of the simpledb.log simpledb.record and the transaction's id.
+    * The block must have been latched by {@link #latchExclusive(Block) latchExclusive}.
     * @param blk a reference to the disk block
     * @param offset a byte offset within that block
     * @param val the value to be stored
@@ -143,7 +214,7 @@ public class Transaction {
    public void setInt(Block blk, int offset, int val) {
       concurMgr.xLock(blk);
       Buffer buff = myBuffers.getBuffer(blk);
-      int lsn = recoveryMgr.setInt(buff, offset, val);
+      long lsn = recoveryMgr.setInt(buff, offset, val);
       buff.setInt(offset, val, txnum, lsn);
    }
    
@@ -156,6 +227,7 @@ public class Transaction {
     * writes that simpledb.record to the simpledb.log.
     * Finally, it calls the simpledb.buffer to store the value,
     * passing in the LSN of the simpledb.log simpledb.record and the transaction's id.
+    * The block must have been latched by {@link #latchExclusive(Block) latchExclusive}.
     * @param blk a reference to the disk block
     * @param offset a byte offset within that block
     * @param val the value to be stored
@@ -163,7 +235,7 @@ public class Transaction {
    public void setString(Block blk, int offset, String val) {
       concurMgr.xLock(blk);
       Buffer buff = myBuffers.getBuffer(blk);
-      int lsn = recoveryMgr.setString(buff, offset, val);
+      long lsn = recoveryMgr.setString(buff, offset, val);
       buff.setString(offset, val, txnum, lsn);
    }
    
@@ -186,6 +258,8 @@ public class Transaction {
     * and returns a reference to it.
     * This method first obtains an XLock on the
     * "end of the simpledb.file", before performing the append.
+    * The recovery manager is told about the append, since
+    * the formatting of the new page is not logged.
     * @param filename the name of the simpledb.file
     * @param fmtr the formatter used to initialize the new page
     * @return a reference to the newly-created disk block
@@ -194,6 +268,7 @@ public class Transaction {
       Block dummyblk = new Block(filename, END_OF_FILE);
       concurMgr.xLock(dummyblk);
       Block blk = myBuffers.pinNew(filename, fmtr);
+      recoveryMgr.appended(filename);
       unpin(blk);
       return blk;
    }
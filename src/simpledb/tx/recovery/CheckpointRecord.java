@@ -1,34 +1,77 @@
 package simpledb.tx.recovery;
 
+import static simpledb.file.Page.*;
 import simpledb.log.BasicLogRecord;
+import simpledb.log.LogWriter;
+import simpledb.server.SimpleDB;
 
 /**
  * The CHECKPOINT simpledb.log simpledb.record.
+ * The checkpoint is non-quiescent: transactions keep running
+ * while it is taken, so the simpledb.record saves where the recovery
+ * must start redoing updates, and how far back it must look
+ * for the updates of the transactions that were still active.
  * @author Edward Sciore
  */
 class CheckpointRecord implements LogRecord {
+   private long redoLSN, undoLSN;
    
    /**
-    * Creates a quiescent checkpoint simpledb.record.
+    * Creates a non-quiescent checkpoint simpledb.record.
+    * @param redoLSN the LSN up to which all the updates were on disk
+    * @param undoLSN the LSN of the start simpledb.record of the oldest active transaction
     */
-   public CheckpointRecord() {}
+   public CheckpointRecord(long redoLSN, long undoLSN) {
+      this.redoLSN = redoLSN;
+      this.undoLSN = undoLSN;
+   }
    
    /**
-    * Creates a simpledb.log simpledb.record by reading no other values
-    * from the basic simpledb.log simpledb.record.
+    * Creates a simpledb.log simpledb.record by reading four other values
+    * from the basic simpledb.log simpledb.record,
+    * the two halves of each LSN.
     * @param rec the basic simpledb.log simpledb.record
     */
-   public CheckpointRecord(BasicLogRecord rec) {}
+   public CheckpointRecord(BasicLogRecord rec) {
+      redoLSN = readLSN(rec);
+      undoLSN = readLSN(rec);
+   }
+   
+   /**
+    * Returns the LSN after which the updates must be redone.
+    * @return the redo LSN of the checkpoint
+    */
+   public long redoLSN() {
+      return redoLSN;
+   }
+   
+   /**
+    * Returns the LSN before which no update of an unfinished
+    * transaction can be found.
+    * @return the undo LSN of the checkpoint
+    */
+   public long undoLSN() {
+      return undoLSN;
+   }
    
    /** 
     * Writes a checkpoint simpledb.record to the simpledb.log.
     * This simpledb.log simpledb.record contains the CHECKPOINT operator,
-    * and nothing else.
+    * followed by the redo and the undo LSN.
     * @return the LSN of the last simpledb.log value
     */
-   public int writeToLog() {
-      Object[] rec = new Object[] {CHECKPOINT};
-      return logMgr.append(rec);
+   public long writeToLog() {
+      return SimpleDB.logMgr().append(this);
+   }
+   
+   public int logSize() {
+      return 5 * INT_SIZE;
+   }
+   
+   public void writeTo(LogWriter out) {
+      out.writeInt(CHECKPOINT);
+      writeLSN(out, redoLSN);
+      writeLSN(out, undoLSN);
    }
    
    public int op() {
@@ -47,9 +90,25 @@ class CheckpointRecord implements LogRecord {
     * Does nothing, because a checkpoint simpledb.record
     * contains no undo information.
     */
-   public void undo(int txnum) {}
+   public void undo(int txnum, boolean logged) {}
+   
+   /**
+    * Does nothing, because a checkpoint simpledb.record
+    * contains no redo information.
+    */
+   public void redo(int txnum) {}
    
    public String toString() {
-      return "<CHECKPOINT>";
+      return "<CHECKPOINT " + redoLSN + " " + undoLSN + ">";
+   }
+   
+   private static void writeLSN(LogWriter out, long lsn) {
+      out.writeInt((int) (lsn >>> 32));
+      out.writeInt((int) lsn);
+   }
+   
+   private static long readLSN(BasicLogRecord rec) {
+      long hi = rec.nextInt();
+      return (hi << 32) | (rec.nextInt() & 0xFFFFFFFFL);
    }
 }
@@ -0,0 +1,83 @@
+package simpledb.tx.recovery;
+
+import simpledb.server.SimpleDB;
+
+/**
+ * The background checkpointer.
+ * The thread periodically checks how much the simpledb.log has grown
+ * since the last checkpoint, and writes a new non-quiescent
+ * checkpoint when the simpledb.log has grown by the specified number
+ * of blocks, so that the recovery reads a bounded part of the simpledb.log.
+ * Transactions are not stopped during the checkpoint.
+ */
+class Checkpointer extends Thread {
+   private static final long DELAY = 100;  // the time between two checks, in milliseconds
+   private long interval;
+   private boolean stopped = false;
+
+   /**
+    * Creates a checkpointer that writes a checkpoint
+    * every time the specified number of simpledb.log blocks is appended.
+    * @param blocks the number of simpledb.log blocks between two checkpoints
+    */
+   Checkpointer(int blocks) {
+      super("simpledb-checkpointer");
+      interval = (long) blocks * SimpleDB.BLOCK_SIZE;
+      setDaemon(true);
+   }
+
+   /**
+    * Checks the size of the simpledb.log every few milliseconds,
+    * and writes a checkpoint when needed,
+    * until the checkpointer is shut down.
+    */
+   public void run() {
+      long last = SimpleDB.logMgr().currentLSN();
+      while (waitForNextCheck()) {
+         if (SimpleDB.logMgr().currentLSN() - last < interval)
+            continue;
+         try {
+            last = RecoveryMgr.checkpoint();
+         }
+         catch (RuntimeException e) {
+            // the checkpoint is tried again at the next check
+         }
+      }
+   }
+
+   /**
+    * Stops the checkpointer, waiting for the end of its current checkpoint.
+    * The thread is not interrupted, since an interrupt would
+    * close the simpledb.file channel it is writing to.
+    * An interrupt of the calling thread does not end the wait,
+    * but is restored once the checkpointer has stopped.
+    */
+   void shutdown() {
+      synchronized (this) {
+         stopped = true;
+         notifyAll();
+      }
+      boolean interrupted = false;
+      while (isAlive()) {
+         try {
+            join();
+         }
+         catch (InterruptedException e) {
+            interrupted = true;
+         }
+      }
+      if (interrupted)
+         Thread.currentThread().interrupt();
+   }
+
+   private synchronized boolean waitForNextCheck() {
+      try {
+         if (!stopped)
+            wait(DELAY);
+      }
+      catch (InterruptedException e) {
+         stopped = true;
+      }
+      return !stopped;
+   }
+}
@@ -1,6 +1,9 @@
 package simpledb.tx.recovery;
 
+import static simpledb.file.Page.*;
 import simpledb.log.BasicLogRecord;
+import simpledb.log.LogWriter;
+import simpledb.server.SimpleDB;
 
 /**
  * The COMMIT simpledb.log simpledb.record
@@ -31,9 +34,17 @@ class CommitRecord implements LogRecord {
     * followed by the transaction id.
     * @return the LSN of the last simpledb.log value
     */
-   public int writeToLog() {
-      Object[] rec = new Object[] {COMMIT, txnum};
-      return logMgr.append(rec);
+   public long writeToLog() {
+      return SimpleDB.logMgr().append(this);
+   }
+   
+   public int logSize() {
+      return 2 * INT_SIZE;
+   }
+   
+   public void writeTo(LogWriter out) {
+      out.writeInt(COMMIT);
+      out.writeInt(txnum);
    }
    
    public int op() {
@@ -48,7 +59,13 @@ class CommitRecord implements LogRecord {
     * Does nothing, because a commit simpledb.record
     * contains no undo information.
     */
-   public void undo(int txnum) {}
+   public void undo(int txnum, boolean logged) {}
+   
+   /**
+    * Does nothing, because a commit simpledb.record
+    * contains no redo information.
+    */
+   public void redo(int txnum) {}
    
    public String toString() {
       return "<COMMIT " + txnum + ">";
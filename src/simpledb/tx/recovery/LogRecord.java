@@ -1,27 +1,24 @@
 package simpledb.tx.recovery;
 
-import simpledb.log.LogMgr;
-import simpledb.server.SimpleDB;
+import simpledb.log.LogWritable;
 
 /**
  * The interface implemented by each type of simpledb.log simpledb.record.
  * @author Edward Sciore
  */
-public interface LogRecord {
+public interface LogRecord extends LogWritable {
    /**
-    * The six different types of simpledb.log simpledb.record
+    * The seven different types of simpledb.log simpledb.record
     */
    static final int CHECKPOINT = 0, START = 1,
       COMMIT = 2, ROLLBACK  = 3,
-      SETINT = 4, SETSTRING = 5;
-   
-   static final LogMgr logMgr = SimpleDB.logMgr();
+      SETINT = 4, SETSTRING = 5, SETBYTES = 6;
    
    /**
     * Writes the simpledb.record to the simpledb.log and returns its LSN.
     * @return the LSN of the simpledb.record in the simpledb.log
     */
-   int writeToLog();
+   long writeToLog();
    
    /**
     * Returns the simpledb.log simpledb.record's type.
@@ -39,8 +36,19 @@ public interface LogRecord {
    /**
     * Undoes the operation encoded by this simpledb.log simpledb.record.
     * The only simpledb.log simpledb.record types for which this method
-    * does anything interesting are SETINT and SETSTRING.
+    * does anything interesting are SETINT, SETSTRING and SETBYTES.
+    * A logged undo writes the restored value to the simpledb.log,
+    * as an update of the transaction performing the undo.
     * @param txnum the id of the transaction that is performing the undo.
+    * @param logged true if the undo must be written to the simpledb.log
+    */
+   void undo(int txnum, boolean logged);
+   
+   /**
+    * Redoes the operation encoded by this simpledb.log simpledb.record.
+    * The only simpledb.log simpledb.record types for which this method
+    * does anything interesting are SETINT, SETSTRING and SETBYTES.
+    * @param txnum the id of the transaction that is performing the redo.
     */
-   void undo(int txnum);
+   void redo(int txnum);
 }
\ No newline at end of file
@@ -7,14 +7,32 @@ import simpledb.server.SimpleDB;
 
 /**
  * A class that provides the ability to read records
- * from the simpledb.log in reverse order.
+ * from the simpledb.log in reverse order, or forward from a given LSN.
  * Unlike the similar class 
  * {@link simpledb.log.LogIterator LogIterator},  
  * this class understands the meaning of the simpledb.log records.
  * @author Edward Sciore
  */
 class LogRecordIterator implements Iterator<LogRecord> {
-   private Iterator<BasicLogRecord> iter = SimpleDB.logMgr().iterator();
+   private Iterator<BasicLogRecord> iter;
+   private long lsn;
+   
+   /**
+    * Creates an iterator that reads the simpledb.log records in reverse order,
+    * starting with the most recent.
+    */
+   public LogRecordIterator() {
+      iter = SimpleDB.logMgr().iterator();
+   }
+   
+   /**
+    * Creates an iterator that reads the simpledb.log records
+    * following the specified LSN, in the order in which they were written.
+    * @param lsn the LSN after which the iteration starts
+    */
+   public LogRecordIterator(long lsn) {
+      iter = SimpleDB.logMgr().iterator(lsn);
+   }
    
    public boolean hasNext() {
       return iter.hasNext();
@@ -31,6 +49,7 @@ class LogRecordIterator implements Iterator<LogRecord> {
     */
    public LogRecord next() {
       BasicLogRecord rec = iter.next();
+      lsn = rec.lsn();
       int op = rec.nextInt();
       switch (op) {
          case CHECKPOINT:
@@ -45,11 +64,21 @@ class LogRecordIterator implements Iterator<LogRecord> {
             return new SetIntRecord(rec);
          case SETSTRING:
             return new SetStringRecord(rec);
+         case SETBYTES:
+            return new SetBytesRecord(rec);
          default:
             return null;
       }
    } 
    
+   /**
+    * Returns the LSN of the simpledb.log simpledb.record returned by the last call to next.
+    * @return the LSN of the last simpledb.log simpledb.record read
+    */
+   public long lsn() {
+      return lsn;
+   }
+   
    public void remove() {
       throw new UnsupportedOperationException();
    }
@@ -1,17 +1,42 @@
 package simpledb.tx.recovery;
 
 import static simpledb.tx.recovery.LogRecord.*;
+import static simpledb.file.Page.*;
 import simpledb.file.Block;
 import simpledb.buffer.Buffer;
+import simpledb.log.LogMgr;
 import simpledb.server.SimpleDB;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
  * The recovery manager.  Each transaction has its own recovery manager.
+ * Each update is logged with both its previous and its new value,
+ * so that the simpledb.log can be used to undo the update as well as to redo it.
+ * Thus a transaction commits by forcing only its simpledb.log records to disk:
+ * the modified pages are written later, when their buffers are
+ * replaced or flushed, and are rebuilt from the simpledb.log by the
+ * recovery if the system crashes before.
+ * The only exception is the formatting of the blocks appended by the
+ * transaction, which is written to disk by the append but not logged:
+ * the files the transaction appended to are forced before its
+ * commit or rollback simpledb.record is written.
+ * Checkpoints are non-quiescent: they are written while transactions
+ * run, periodically by a background {@link Checkpointer checkpointer},
+ * so that the recovery need not read the whole simpledb.log.
  * @author Edward Sciore
  */
 public class RecoveryMgr {
+   // the LSNs of the start records of the active transactions;
+   // also the lock that orders start, commit, rollback and checkpoint records
+   private static final Map<Integer,Long> activeTxs = new HashMap<Integer,Long>();
+   private static Checkpointer checkpointer;
+
    private int txnum;
+   // the update records are reused, so that logging an update allocates nothing
+   private SetIntRecord setint;
+   private SetStringRecord setstring;
+   private Set<String> appendedFiles;  // null until the transaction appends a block
 
    /**
     * Creates a recovery manager for the specified transaction.
@@ -19,38 +44,102 @@ public class RecoveryMgr {
     */
    public RecoveryMgr(int txnum) {
       this.txnum = txnum;
-      new StartRecord(txnum).writeToLog();
+      synchronized (activeTxs) {
+         long lsn = new StartRecord(txnum).writeToLog();
+         activeTxs.put(txnum, lsn);
+      }
    }
 
    /**
     * Writes a commit simpledb.record to the simpledb.log, and flushes it to disk.
+    * The pages modified by the transaction are not flushed.
     */
    public void commit() {
-      SimpleDB.bufferMgr().flushAll(txnum);
-      int lsn = new CommitRecord(txnum).writeToLog();
-      SimpleDB.logMgr().flush(lsn);
+      forceAppendedFiles();
+      finish(new CommitRecord(txnum));
    }
 
    /**
-    * Writes a rollback simpledb.record to the simpledb.log, and flushes it to disk.
+    * Rolls back the transaction, then writes a rollback simpledb.record
+    * to the simpledb.log, and flushes it to disk.
+    * The pages modified by the transaction are not flushed.
     */
    public void rollback() {
       doRollback();
-      SimpleDB.bufferMgr().flushAll(txnum);
-      int lsn = new RollbackRecord(txnum).writeToLog();
-      SimpleDB.logMgr().flush(lsn);
+      forceAppendedFiles();
+      finish(new RollbackRecord(txnum));
    }
 
    /**
-    * Recovers uncompleted transactions from the simpledb.log,
-    * then writes a quiescent checkpoint simpledb.record to the simpledb.log and flushes it.
+    * Recovers the database from the simpledb.log,
+    * then writes a checkpoint, so that the next recovery
+    * need not read the simpledb.log before it.
     */
    public void recover() {
       doRecover();
-      SimpleDB.bufferMgr().flushAll(txnum);
-      int lsn = new CheckpointRecord().writeToLog();
+      checkpoint();
+   }
+
+   /**
+    * Writes a non-quiescent checkpoint simpledb.record to the simpledb.log, and flushes it.
+    * The end of the simpledb.log is noted first, and all the modified pages
+    * are then flushed, so that the updates logged before that point
+    * are on disk: the checkpoint saves this point as its redo LSN.
+    * The start LSN of the oldest active transaction is saved as well,
+    * as the undo LSN, since the recovery may have to undo the updates of
+    * the transactions that were active during the checkpoint.
+    * Transactions can start, update and finish while the pages are flushed.
+    * @return the LSN of the checkpoint simpledb.record
+    */
+   public static synchronized long checkpoint() {
+      long redoLSN = SimpleDB.logMgr().currentLSN();
+      SimpleDB.bufferMgr().flushAll();
+      long lsn;
+      synchronized (activeTxs) {
+         long undoLSN = redoLSN;
+         for (long start : activeTxs.values())
+            undoLSN = Math.min(undoLSN, start);
+         lsn = new CheckpointRecord(redoLSN, undoLSN).writeToLog();
+      }
       SimpleDB.logMgr().flush(lsn);
+      return lsn;
+   }
+
+   /**
+    * Starts the background checkpointer, unless
+    * {@link SimpleDB#CHECKPOINT_INTERVAL periodic checkpoints} are disabled.
+    * Called at system startup, after the recovery,
+    * before the clients start.
+    */
+   public static void startCheckpointer() {
+      stopCheckpointer();
+      if (SimpleDB.CHECKPOINT_INTERVAL > 0) {
+         checkpointer = new Checkpointer(SimpleDB.CHECKPOINT_INTERVAL);
+         checkpointer.start();
+      }
+   }
 
+   /**
+    * Stops the background checkpointer, if any,
+    * waiting for the end of the checkpoint it is writing.
+    */
+   public static void stopCheckpointer() {
+      if (checkpointer != null) {
+         checkpointer.shutdown();
+         checkpointer = null;
+      }
+   }
+
+   /**
+    * Records that the transaction appended a block to the specified simpledb.file.
+    * The formatting of the new block is not logged, so the simpledb.file
+    * is forced before the transaction commits or rolls back.
+    * @param filename the name of the simpledb.file
+    */
+   public void appended(String filename) {
+      if (appendedFiles == null)
+         appendedFiles = new HashSet<String>();
+      appendedFiles.add(filename);
    }
 
    /**
@@ -61,30 +150,74 @@ public class RecoveryMgr {
     * @param offset the offset of the value in the page
     * @param newval the value to be written
     */
-   public int setInt(Buffer buff, int offset, int newval) {
-      int oldval = buff.getInt(offset);
+   public long setInt(Buffer buff, int offset, int newval) {
       Block blk = buff.block();
       if (isTempBlock(blk))
          return -1;
-      else
-         return new SetIntRecord(txnum, blk, offset, oldval).writeToLog();
+      int oldval = buff.getInt(offset);
+      if (setint == null)
+         setint = new SetIntRecord(txnum, blk, offset, oldval, newval);
+      return setint.reset(blk, offset, oldval, newval).writeToLog();
    }
 
    /**
     * Writes a setstring simpledb.record to the simpledb.log, and returns its lsn.
+    * If the simpledb.record would not fit in a simpledb.log block,
+    * the update is logged as setbytes records instead
+    * (see {@link #logBytes(Buffer, int, String)}).
     * Updates to temporary files are not logged; instead, a
     * "dummy" negative lsn is returned.
     * @param buff the simpledb.buffer containing the page
     * @param offset the offset of the value in the page
     * @param newval the value to be written
     */
-   public int setString(Buffer buff, int offset, String newval) {
-      String oldval = buff.getString(offset);
+   public long setString(Buffer buff, int offset, String newval) {
       Block blk = buff.block();
       if (isTempBlock(blk))
          return -1;
-      else
-         return new SetStringRecord(txnum, blk, offset, oldval).writeToLog();
+      String oldval = buff.getString(offset);
+      if (setstring == null)
+         setstring = new SetStringRecord(txnum, blk, offset, oldval, newval);
+      setstring.reset(blk, offset, oldval, newval);
+      if (setstring.logSize() <= LogMgr.maxRecordSize())
+         return setstring.writeToLog();
+      return logBytes(buff, offset, newval);
+   }
+
+   /**
+    * Logs the update of a string as setbytes records, and returns
+    * the lsn of the last one.
+    * The new value is encoded as the page will store it,
+    * and only the bytes that differ from those in the page are logged,
+    * split into records that fit in a simpledb.log block.
+    * If no byte changes, nothing is logged and a dummy lsn is returned.
+    * @param buff the simpledb.buffer containing the page
+    * @param offset the offset of the value in the page
+    * @param newval the value to be written
+    */
+   private long logBytes(Buffer buff, int offset, String newval) {
+      Block blk = buff.block();
+      byte[] encoded = newval.getBytes(CHARSET);
+      byte[] newbytes = ByteBuffer.allocate(INT_SIZE + encoded.length)
+            .putInt(encoded.length).put(encoded).array();
+      byte[] oldbytes = buff.getBytes(offset, newbytes.length);
+      int start = 0, end = newbytes.length;
+      while (start < end && oldbytes[start] == newbytes[start])
+         start++;
+      while (end > start && oldbytes[end-1] == newbytes[end-1])
+         end--;
+      int chunk = (LogMgr.maxRecordSize() - SetBytesRecord.overhead(blk.fileName())) / 2;
+      if (chunk <= 0)
+         throw new RuntimeException("the name of simpledb.file " + blk.fileName()
+               + " is too long for a simpledb.log simpledb.record");
+      long lsn = -1;
+      for (int pos = start; pos < end; pos += chunk) {
+         int last = Math.min(end, pos + chunk);
+         lsn = new SetBytesRecord(txnum, blk, offset + pos,
+               Arrays.copyOfRange(oldbytes, pos, last),
+               Arrays.copyOfRange(newbytes, pos, last)).writeToLog();
+      }
+      return lsn;
    }
 
    /**
@@ -93,6 +226,8 @@ public class RecoveryMgr {
     * calling undo() for each simpledb.log simpledb.record it finds
     * for the transaction,
     * until it finds the transaction's START simpledb.record.
+    * Each undo is logged, so that the rollback is redone
+    * if the system crashes before the undone pages are written.
     */
    private void doRollback() {
       Iterator<LogRecord> iter = new LogRecordIterator();
@@ -101,33 +236,82 @@ public class RecoveryMgr {
          if (rec.txNumber() == txnum) {
             if (rec.op() == START)
                return;
-            rec.undo(txnum);
+            rec.undo(txnum, true);
          }
       }
    }
 
    /**
-    * Does a complete database recovery.
-    * The method iterates through the simpledb.log records.
-    * Whenever it finds a simpledb.log simpledb.record for an unfinished
-    * transaction, it calls undo() on that simpledb.record.
-    * The method stops when it encounters a CHECKPOINT simpledb.record
-    * or the end of the simpledb.log.
+    * Does a complete database recovery, in three passes.
+    * The analysis pass iterates backward through the simpledb.log records
+    * until it encounters a CHECKPOINT simpledb.record or the beginning
+    * of the simpledb.log, and reads the redo and undo LSNs of the checkpoint.
+    * The redo pass iterates forward from the redo LSN,
+    * calling redo() on each simpledb.log simpledb.record, so that the pages
+    * contain every update of every transaction.
+    * The undo pass iterates backward again, down to the undo LSN,
+    * collecting the finished transactions as their commit or rollback
+    * records are found, and calls undo() on each simpledb.log simpledb.record
+    * of an unfinished transaction.
+    * These undos are not logged, because the recovery ends with
+    * a checkpoint, after all the pages have been flushed.
     */
    private void doRecover() {
-      Collection<Integer> finishedTxs = new ArrayList<Integer>();
-      Iterator<LogRecord> iter = new LogRecordIterator();
+      long redoLSN = 0, undoLSN = 0;
+      LogRecordIterator iter = new LogRecordIterator();
+      while (iter.hasNext()) {
+         LogRecord rec = iter.next();
+         if (rec.op() == CHECKPOINT) {
+            CheckpointRecord checkpoint = (CheckpointRecord) rec;
+            redoLSN = checkpoint.redoLSN();
+            undoLSN = checkpoint.undoLSN();
+            break;
+         }
+      }
+
+      iter = new LogRecordIterator(redoLSN);
+      while (iter.hasNext())
+         iter.next().redo(txnum);
+
+      Set<Integer> finishedTxs = new HashSet<Integer>();
+      iter = new LogRecordIterator();
       while (iter.hasNext()) {
          LogRecord rec = iter.next();
-         if (rec.op() == CHECKPOINT)
+         if (iter.lsn() < undoLSN)
             return;
          if (rec.op() == COMMIT || rec.op() == ROLLBACK)
             finishedTxs.add(rec.txNumber());
          else if (!finishedTxs.contains(rec.txNumber()))
-            rec.undo(txnum);
+            rec.undo(txnum, false);
       }
    }
 
+   /**
+    * Writes the commit or rollback simpledb.record of the transaction,
+    * which is no longer active, and flushes it to disk.
+    * @param rec the commit or rollback simpledb.record
+    */
+   private void finish(LogRecord rec) {
+      long lsn;
+      synchronized (activeTxs) {
+         lsn = rec.writeToLog();
+         activeTxs.remove(txnum);
+      }
+      SimpleDB.logMgr().flush(lsn);
+   }
+
+   /**
+    * Forces to disk the files the transaction appended blocks to.
+    * Temporary files are not forced.
+    */
+   private void forceAppendedFiles() {
+      if (appendedFiles == null)
+         return;
+      for (String filename : appendedFiles)
+         SimpleDB.fileMgr().force(filename);
+      appendedFiles = null;
+   }
+
    /**
     * Determines whether a block comes from a temporary simpledb.file or not.
     */
@@ -0,0 +1,139 @@
+package simpledb.tx.recovery;
+
+import static simpledb.file.Page.*;
+import simpledb.server.SimpleDB;
+import simpledb.buffer.*;
+import simpledb.file.Block;
+import simpledb.log.BasicLogRecord;
+import simpledb.log.LogWriter;
+
+/**
+ * The SETBYTES simpledb.log simpledb.record, which saves the previous and the new
+ * contents of a range of bytes of a block.
+ * It is used for the updates of a string whose setstring
+ * simpledb.record would not fit in a simpledb.log block:
+ * the changed bytes of the update are split among several
+ * setbytes records, each small enough to fit.
+ */
+class SetBytesRecord implements LogRecord {
+   private int txnum, offset;
+   private byte[] oldval, newval;
+   private Block blk;
+
+   /**
+    * Creates a new setbytes simpledb.log simpledb.record.
+    * @param txnum the ID of the specified transaction
+    * @param blk the block containing the bytes
+    * @param offset the offset of the bytes in the block
+    * @param oldval the bytes before the update
+    * @param newval the bytes after the update, of the same length
+    */
+   public SetBytesRecord(int txnum, Block blk, int offset, byte[] oldval, byte[] newval) {
+      this.txnum = txnum;
+      this.blk = blk;
+      this.offset = offset;
+      this.oldval = oldval;
+      this.newval = newval;
+   }
+
+   /**
+    * Creates a simpledb.log simpledb.record by reading six other values from the simpledb.log.
+    * @param rec the basic simpledb.log simpledb.record
+    */
+   public SetBytesRecord(BasicLogRecord rec) {
+      txnum = rec.nextInt();
+      String filename = rec.nextString();
+      int blknum = rec.nextInt();
+      blk = new Block(filename, blknum);
+      offset = rec.nextInt();
+      oldval = rec.nextBytes();
+      newval = rec.nextBytes();
+   }
+
+   /**
+    * Returns the size of a setbytes simpledb.record without its bytes,
+    * that is, the space left for the bytes is the maximum size
+    * of a simpledb.log simpledb.record minus this overhead.
+    * @param filename the name of the simpledb.file of the block
+    * @return the size of the other values of the simpledb.record
+    */
+   static int overhead(String filename) {
+      return 6 * INT_SIZE + STR_SIZE(filename.length());
+   }
+
+   /**
+    * Writes a setbytes simpledb.record to the simpledb.log.
+    * This simpledb.log simpledb.record contains the SETBYTES operator,
+    * followed by the transaction id, the filename, number,
+    * and offset of the modified block, and the previous
+    * and the new bytes at that offset.
+    * @return the LSN of the last simpledb.log value
+    */
+   public long writeToLog() {
+      return SimpleDB.logMgr().append(this);
+   }
+
+   public int logSize() {
+      return overhead(blk.fileName()) + oldval.length + newval.length;
+   }
+
+   public void writeTo(LogWriter out) {
+      out.writeInt(SETBYTES);
+      out.writeInt(txnum);
+      out.writeString(blk.fileName());
+      out.writeInt(blk.number());
+      out.writeInt(offset);
+      out.writeBytes(oldval);
+      out.writeBytes(newval);
+   }
+
+   public int op() {
+      return SETBYTES;
+   }
+
+   public int txNumber() {
+      return txnum;
+   }
+
+   public String toString() {
+      return "<SETBYTES " + txnum + " " + blk + " " + offset + " " + oldval.length + ">";
+   }
+
+   /**
+    * Replaces the specified bytes with the previous bytes saved in the simpledb.log simpledb.record.
+    * The method pins a simpledb.buffer to the specified block,
+    * calls setBytes to restore the saved bytes, and unpins the simpledb.buffer.
+    * When the undo is logged, the restored bytes are written to the simpledb.log
+    * as a new setbytes simpledb.record of the transaction, so that a later
+    * redo of the simpledb.log repeats the undo as well;
+    * otherwise a dummy LSN is used.
+    * @see simpledb.tx.recovery.LogRecord#undo(int, boolean)
+    */
+   public void undo(int txnum, boolean logged) {
+      BufferMgr buffMgr = SimpleDB.bufferMgr();
+      Buffer buff = buffMgr.pin(blk);
+      buff.latchExclusive();
+      long lsn = -1;
+      if (logged)
+         lsn = new SetBytesRecord(txnum, blk, offset, buff.getBytes(offset, oldval.length), oldval).writeToLog();
+      buff.setBytes(offset, oldval, txnum, lsn);
+      buff.unlatchExclusive();
+      buffMgr.unpin(buff);
+   }
+
+   /**
+    * Replaces the specified bytes with the new bytes saved in the simpledb.log simpledb.record.
+    * The method pins a simpledb.buffer to the specified block,
+    * calls setBytes to write the bytes (using a dummy LSN),
+    * and unpins the simpledb.buffer.
+    * @see simpledb.tx.recovery.LogRecord#redo(int)
+    */
+   public void redo(int txnum) {
+      BufferMgr buffMgr = SimpleDB.bufferMgr();
+      Buffer buff = buffMgr.pin(blk);
+      buff.latchExclusive();
+      buff.setBytes(offset, newval, txnum, -1);
+      buff.unlatchExclusive();
+      buffMgr.unpin(buff);
+   }
+}
@@ -1,12 +1,14 @@
 package simpledb.tx.recovery;
 
+import static simpledb.file.Page.*;
 import simpledb.server.SimpleDB;
 import simpledb.buffer.*;
 import simpledb.file.Block;
 import simpledb.log.BasicLogRecord;
+import simpledb.log.LogWriter;
 
 class SetIntRecord implements LogRecord {
-   private int txnum, offset, val;
+   private int txnum, offset, oldval, newval;
    private Block blk;
 
    /**
@@ -14,17 +16,19 @@ class SetIntRecord implements LogRecord {
     * @param txnum the ID of the specified transaction
     * @param blk the block containing the value
     * @param offset the offset of the value in the block
-    * @param val the new value
+    * @param oldval the value before the update
+    * @param newval the value after the update
     */
-   public SetIntRecord(int txnum, Block blk, int offset, int val) {
+   public SetIntRecord(int txnum, Block blk, int offset, int oldval, int newval) {
       this.txnum = txnum;
       this.blk = blk;
       this.offset = offset;
-      this.val = val;
+      this.oldval = oldval;
+      this.newval = newval;
    }
 
    /**
-    * Creates a simpledb.log simpledb.record by reading five other values from the simpledb.log.
+    * Creates a simpledb.log simpledb.record by reading six other values from the simpledb.log.
     * @param rec the basic simpledb.log simpledb.record
     */
    public SetIntRecord(BasicLogRecord rec) {
@@ -33,7 +37,25 @@ class SetIntRecord implements LogRecord {
       int blknum = rec.nextInt();
       blk = new Block(filename, blknum);
       offset = rec.nextInt();
-      val = rec.nextInt();
+      oldval = rec.nextInt();
+      newval = rec.nextInt();
+   }
+
+   /**
+    * Reuses the simpledb.record for another update of the same transaction,
+    * so that logging an update does not allocate a new simpledb.record.
+    * @param blk the block containing the value
+    * @param offset the offset of the value in the block
+    * @param oldval the value before the update
+    * @param newval the value after the update
+    * @return this simpledb.record
+    */
+   SetIntRecord reset(Block blk, int offset, int oldval, int newval) {
+      this.blk = blk;
+      this.offset = offset;
+      this.oldval = oldval;
+      this.newval = newval;
+      return this;
    }
 
    /**
@@ -41,13 +63,25 @@ class SetIntRecord implements LogRecord {
     * This simpledb.log simpledb.record contains the SETINT operator,
     * followed by the transaction id, the filename, number,
     * and offset of the modified block, and the previous
-    * integer value at that offset.
+    * and the new integer values at that offset.
     * @return the LSN of the last simpledb.log value
     */
-   public int writeToLog() {
-      Object[] rec = new Object[] {SETINT, txnum, blk.fileName(),
-         blk.number(), offset, val};
-      return logMgr.append(rec);
+   public long writeToLog() {
+      return SimpleDB.logMgr().append(this);
+   }
+
+   public int logSize() {
+      return 6 * INT_SIZE + STR_SIZE(blk.fileName().length());
+   }
+
+   public void writeTo(LogWriter out) {
+      out.writeInt(SETINT);
+      out.writeInt(txnum);
+      out.writeString(blk.fileName());
+      out.writeInt(blk.number());
+      out.writeInt(offset);
+      out.writeInt(oldval);
+      out.writeInt(newval);
    }
 
    public int op() {
@@ -59,20 +93,44 @@ class SetIntRecord implements LogRecord {
    }
 
    public String toString() {
-      return "<SETINT " + txnum + " " + blk + " " + offset + " " + val + ">";
+      return "<SETINT " + txnum + " " + blk + " " + offset + " " + oldval + " " + newval + ">";
+   }
+
+   /**
+    * Replaces the specified data value with the previous value saved in the simpledb.log simpledb.record.
+    * The method pins a simpledb.buffer to the specified block,
+    * calls setInt to restore the saved value, and unpins the simpledb.buffer.
+    * When the undo is logged, the restored value is written to the simpledb.log
+    * as a new setint simpledb.record of the transaction, so that a later
+    * redo of the simpledb.log repeats the undo as well;
+    * otherwise a dummy LSN is used.
+    * @see simpledb.tx.recovery.LogRecord#undo(int, boolean)
+    */
+   public void undo(int txnum, boolean logged) {
+      BufferMgr buffMgr = SimpleDB.bufferMgr();
+      Buffer buff = buffMgr.pin(blk);
+      buff.latchExclusive();
+      long lsn = -1;
+      if (logged)
+         lsn = new SetIntRecord(txnum, blk, offset, buff.getInt(offset), oldval).writeToLog();
+      buff.setInt(offset, oldval, txnum, lsn);
+      buff.unlatchExclusive();
+      buffMgr.unpin(buff);
    }
 
    /**
-    * Replaces the specified data value with the value saved in the simpledb.log simpledb.record.
+    * Replaces the specified data value with the new value saved in the simpledb.log simpledb.record.
     * The method pins a simpledb.buffer to the specified block,
-    * calls setInt to restore the saved value
-    * (using a dummy LSN), and unpins the simpledb.buffer.
-    * @see simpledb.tx.recovery.LogRecord#undo(int)
+    * calls setInt to write the value (using a dummy LSN),
+    * and unpins the simpledb.buffer.
+    * @see simpledb.tx.recovery.LogRecord#redo(int)
     */
-   public void undo(int txnum) {
+   public void redo(int txnum) {
       BufferMgr buffMgr = SimpleDB.bufferMgr();
       Buffer buff = buffMgr.pin(blk);
-      buff.setInt(offset, val, txnum, -1);
+      buff.latchExclusive();
+      buff.setInt(offset, newval, txnum, -1);
+      buff.unlatchExclusive();
       buffMgr.unpin(buff);
    }
 }
@@ -1,31 +1,35 @@
 package simpledb.tx.recovery;
 
+import static simpledb.file.Page.*;
 import simpledb.server.SimpleDB;
 import simpledb.buffer.*;
 import simpledb.file.Block;
 import simpledb.log.BasicLogRecord;
+import simpledb.log.LogWriter;
 
 class SetStringRecord implements LogRecord {
    private int txnum, offset;
-   private String val;
+   private String oldval, newval;
    private Block blk;
-   
+
    /**
     * Creates a new setstring simpledb.log simpledb.record.
     * @param txnum the ID of the specified transaction
     * @param blk the block containing the value
     * @param offset the offset of the value in the block
-    * @param val the new value
+    * @param oldval the value before the update
+    * @param newval the value after the update
     */
-   public SetStringRecord(int txnum, Block blk, int offset, String val) {
+   public SetStringRecord(int txnum, Block blk, int offset, String oldval, String newval) {
       this.txnum = txnum;
       this.blk = blk;
       this.offset = offset;
-      this.val = val;
+      this.oldval = oldval;
+      this.newval = newval;
    }
-   
+
    /**
-    * Creates a simpledb.log simpledb.record by reading five other values from the simpledb.log.
+    * Creates a simpledb.log simpledb.record by reading six other values from the simpledb.log.
     * @param rec the basic simpledb.log simpledb.record
     */
    public SetStringRecord(BasicLogRecord rec) {
@@ -34,46 +38,101 @@ class SetStringRecord implements LogRecord {
       int blknum = rec.nextInt();
       blk = new Block(filename, blknum);
       offset = rec.nextInt();
-      val = rec.nextString();
+      oldval = rec.nextString();
+      newval = rec.nextString();
    }
-   
-   /** 
+
+   /**
+    * Reuses the simpledb.record for another update of the same transaction,
+    * so that logging an update does not allocate a new simpledb.record.
+    * @param blk the block containing the value
+    * @param offset the offset of the value in the block
+    * @param oldval the value before the update
+    * @param newval the value after the update
+    * @return this simpledb.record
+    */
+   SetStringRecord reset(Block blk, int offset, String oldval, String newval) {
+      this.blk = blk;
+      this.offset = offset;
+      this.oldval = oldval;
+      this.newval = newval;
+      return this;
+   }
+
+   /**
     * Writes a setString simpledb.record to the simpledb.log.
     * This simpledb.log simpledb.record contains the SETSTRING operator,
     * followed by the transaction id, the filename, number,
     * and offset of the modified block, and the previous
-    * string value at that offset.
+    * and the new string values at that offset.
     * @return the LSN of the last simpledb.log value
     */
-   public int writeToLog() {
-      Object[] rec = new Object[] {SETSTRING, txnum, blk.fileName(),
-         blk.number(), offset, val};
-      return logMgr.append(rec);
+   public long writeToLog() {
+      return SimpleDB.logMgr().append(this);
    }
-   
+
+   public int logSize() {
+      return 4 * INT_SIZE + STR_SIZE(blk.fileName().length())
+            + STR_SIZE(oldval.length()) + STR_SIZE(newval.length());
+   }
+
+   public void writeTo(LogWriter out) {
+      out.writeInt(SETSTRING);
+      out.writeInt(txnum);
+      out.writeString(blk.fileName());
+      out.writeInt(blk.number());
+      out.writeInt(offset);
+      out.writeString(oldval);
+      out.writeString(newval);
+   }
+
    public int op() {
       return SETSTRING;
    }
-   
+
    public int txNumber() {
       return txnum;
    }
-   
+
    public String toString() {
-      return "<SETSTRING " + txnum + " " + blk + " " + offset + " " + val + ">";
+      return "<SETSTRING " + txnum + " " + blk + " " + offset + " " + oldval + " " + newval + ">";
+   }
+
+   /**
+    * Replaces the specified data value with the previous value saved in the simpledb.log simpledb.record.
+    * The method pins a simpledb.buffer to the specified block,
+    * calls setString to restore the saved value, and unpins the simpledb.buffer.
+    * When the undo is logged, the restored value is written to the simpledb.log
+    * as a new setstring simpledb.record of the transaction, so that a later
+    * redo of the simpledb.log repeats the undo as well;
+    * otherwise a dummy LSN is used.
+    * @see simpledb.tx.recovery.LogRecord#undo(int, boolean)
+    */
+   public void undo(int txnum, boolean logged) {
+      BufferMgr buffMgr = SimpleDB.bufferMgr();
+      Buffer buff = buffMgr.pin(blk);
+      buff.latchExclusive();
+      long lsn = -1;
+      if (logged)
+         lsn = new SetStringRecord(txnum, blk, offset, buff.getString(offset), oldval).writeToLog();
+      buff.setString(offset, oldval, txnum, lsn);
+      buff.unlatchExclusive();
+      buffMgr.unpin(buff);
    }
-   
-   /** 
-    * Replaces the specified data value with the value saved in the simpledb.log simpledb.record.
+
+   /**
+    * Replaces the specified data value with the new value saved in the simpledb.log simpledb.record.
     * The method pins a simpledb.buffer to the specified block,
-    * calls setString to restore the saved value
-    * (using a dummy LSN), and unpins the simpledb.buffer.
-    * @see simpledb.tx.recovery.LogRecord#undo(int)
+    * calls setString to write the value (using a dummy LSN),
+    * and unpins the simpledb.buffer.
+    * @see simpledb.tx.recovery.LogRecord#redo(int)
     */
-   public void undo(int txnum) {
+   public void redo(int txnum) {
       BufferMgr buffMgr = SimpleDB.bufferMgr();
       Buffer buff = buffMgr.pin(blk);
-      buff.setString(offset, val, txnum, -1);
+      buff.latchExclusive();
+      buff.setString(offset, newval, txnum, -1);
+      buff.unlatchExclusive();
       buffMgr.unpin(buff);
    }
 }
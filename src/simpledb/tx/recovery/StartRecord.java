@@ -1,6 +1,9 @@
 package simpledb.tx.recovery;
 
+import static simpledb.file.Page.*;
 import simpledb.log.BasicLogRecord;
+import simpledb.log.LogWriter;
+import simpledb.server.SimpleDB;
 
 class StartRecord implements LogRecord {
    private int txnum;
@@ -27,9 +30,17 @@ class StartRecord implements LogRecord {
     * followed by the transaction id.
     * @return the LSN of the last simpledb.log value
     */
-   public int writeToLog() {
-      Object[] rec = new Object[] {START, txnum};
-      return logMgr.append(rec);
+   public long writeToLog() {
+      return SimpleDB.logMgr().append(this);
+   }
+   
+   public int logSize() {
+      return 2 * INT_SIZE;
+   }
+   
+   public void writeTo(LogWriter out) {
+      out.writeInt(START);
+      out.writeInt(txnum);
    }
    
    public int op() {
@@ -44,7 +55,13 @@ class StartRecord implements LogRecord {
     * Does nothing, because a start simpledb.record
     * contains no undo information.
     */
-   public void undo(int txnum) {}
+   public void undo(int txnum, boolean logged) {}
+   
+   /**
+    * Does nothing, because a start simpledb.record
+    * contains no redo information.
+    */
+   public void redo(int txnum) {}
    
    public String toString() {
       return "<START " + txnum + ">";